@@ -0,0 +1,64 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.service.BookService;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServiceBenchmark extends DatabaseBenchmark {
+	
+	private BookService bookService;
+	
+	@Override
+	protected void setUp() {
+		bookService = getBean(BookService.class);
+		// O banco é populado por SQL depois da subida, fora do índice de busca
+		bookService.reindex();
+	}
+	
+	// Query by Example com CONTAINING e ignore case
+	@Benchmark
+	public Page<Book> findByTitle() {
+		Book filter = Book.builder().title("livro " + randomBook()).build();
+		return bookService.find(filter, PageRequest.of(0, 20));
+	}
+	
+	@Benchmark
+	public Page<Book> findByAuthor() {
+		Book filter = Book.builder().author("autor " + randomBook() % 5000).build();
+		return bookService.find(filter, PageRequest.of(0, 20));
+	}
+	
+	// Índice de texto (Lucene): mesmas buscas, com prefixo e ordem de relevância
+	@Benchmark
+	public Page<Book> searchByTitle() {
+		return bookService.search("livro " + randomBook(), PageRequest.of(0, 20));
+	}
+	
+	@Benchmark
+	public Page<Book> searchByAuthor() {
+		return bookService.search("autor " + randomBook() % 5000, PageRequest.of(0, 20));
+	}
+	
+	@Benchmark
+	public Optional<Book> getBookByIsbn() {
+		return bookService.getBookByIsbn(isbn(randomBook()));
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+import com.gustavo.libraryapi.api.resource.BookController;
+import com.gustavo.libraryapi.api.resource.LoanController;
+import com.gustavo.libraryapi.service.CountMode;
+
+// Consulta + mapeamento para DTO das listagens, chamando os controllers diretamente (sem HTTP e sem serialização),
+// com cada estratégia de contagem do total
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerBenchmark extends DatabaseBenchmark {
+	
+	@Param({"20", "100"})
+	private int pageSize;
+	
+	@Param({"EXACT", "CACHED", "NONE"})
+	private CountMode count;
+	
+	private BookController bookController;
+	private LoanController loanController;
+	
+	@Override
+	protected void setUp() {
+		bookController = getBean(BookController.class);
+		loanController = getBean(LoanController.class);
+	}
+	
+	@Benchmark
+	public ResponseEntity<PageDTO<BookDTO>> findBooks() {
+		BookDTO filter = BookDTO.builder().author("autor " + randomBook() % 5000).build();
+		return bookController.find(filter, PageRequest.of(0, pageSize), count, request());
+	}
+	
+	@Benchmark
+	public ResponseEntity<PageDTO<LoanDTO>> findLoans() {
+		LoanFilterDTO filter = LoanFilterDTO.builder().customer(customer(randomBook())).build();
+		return loanController.find(filter, PageRequest.of(0, pageSize), count, request());
+	}
+	
+	// Requisição sem If-None-Match: a página é sempre buscada
+	private static ServletWebRequest request() {
+		return new ServletWebRequest(new MockHttpServletRequest());
+	}
+
+}
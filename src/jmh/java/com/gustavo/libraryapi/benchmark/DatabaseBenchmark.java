@@ -0,0 +1,122 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.gustavo.libraryapi.LibraryApiApplication;
+
+// Sobe a aplicação (em uma porta aleatória) com um H2 em memória populado com a quantidade de livros e empréstimos
+// informada nos parâmetros. Ex: -Djmh.options="-p books=1000000 -p loansPerBook=10"
+@State(Scope.Benchmark)
+public abstract class DatabaseBenchmark {
+	
+	private static final int BATCH_SIZE = 1000;
+	
+	@Param({"10000"})
+	protected int books;
+	
+	// Empréstimos já devolvidos por livro (histórico)
+	@Param({"5"})
+	protected int loansPerBook;
+	
+	protected ConfigurableApplicationContext context;
+	
+	@Setup(Level.Trial)
+	public void startApplication() {
+		// Argumentos de linha de comando têm precedência sobre o application.properties
+		List<String> args = new ArrayList<>(Arrays.asList("--server.port=0",
+				"--spring.datasource.url=jdbc:h2:mem:benchmark-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+				"--spring.jpa.show-sql=false",
+				"--spring.main.banner-mode=off",
+				"--logging.level.root=WARN",
+				"--logging.file.name=target/benchmark.log"));
+		args.addAll(applicationArguments());
+		context = new SpringApplicationBuilder(LibraryApiApplication.class).run(args.toArray(new String[0]));
+		seed(context.getBean(JdbcTemplate.class));
+		setUp();
+	}
+	
+	// Argumentos extras da aplicação de cada benchmark (ex: --server.tomcat.threads.max=16)
+	protected List<String> applicationArguments() {
+		return Collections.emptyList();
+	}
+	
+	// Inicialização específica de cada benchmark, executada depois de popular o banco
+	protected void setUp() {
+	}
+	
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+	
+	protected <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+	
+	protected int localPort() {
+		return Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+	}
+	
+	protected int randomBook() {
+		return ThreadLocalRandom.current().nextInt(books);
+	}
+	
+	// Já na forma normalizada, como os isbns gravados pelo BookService
+	protected static String isbn(int book) {
+		return "ISBN" + book;
+	}
+	
+	protected static String customer(int book) {
+		return "Cliente " + (book % 1000);
+	}
+	
+	private void seed(JdbcTemplate jdbcTemplate) {
+		LocalDate today = LocalDate.now();
+		List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < books; i++) {
+			batch.add(new Object[] { "Livro " + i, "Autor " + (i % 5000), isbn(i) });
+			if(batch.size() == BATCH_SIZE || i == books - 1) {
+				jdbcTemplate.batchUpdate("insert into book (id, title, author, isbn) values (next value for book_seq, ?, ?, ?)", 
+						batch);
+				batch.clear();
+			}
+		}
+		
+		// Estatísticas de empréstimo coerentes com os empréstimos abaixo: todos devolvidos depois de 7 dias
+		if(loansPerBook > 0) {
+			jdbcTemplate.update("insert into book_loan_statistics (id_book, loaned, total_loans, last_loan_date, returned_loans, "
+					+ "total_loan_days) select id, false, ?, ?, ?, ? from book", loansPerBook, today.minusDays(7), loansPerBook, 
+					loansPerBook * 7L);
+		}
+		
+		List<Long> ids = jdbcTemplate.queryForList("select id from book order by id", Long.class);
+		for (int i = 0; i < ids.size(); i++) {
+			for (int j = 0; j < loansPerBook; j++) {
+				batch.add(new Object[] { customer(i), "cliente" + (i % 1000) + "@email.com", ids.get(i), 
+						today.minusDays(j * 7L + 7), true });
+			}
+			if(batch.size() >= BATCH_SIZE || i == ids.size() - 1) {
+				jdbcTemplate.batchUpdate("insert into loan (customer, customer_email, id_book, loan_date, returned) "
+						+ "values (?, ?, ?, ?, ?)", batch);
+				batch.clear();
+			}
+		}
+	}
+
+}
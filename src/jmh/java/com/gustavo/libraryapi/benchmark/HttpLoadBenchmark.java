@@ -0,0 +1,70 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Carga HTTP real (64 clientes simultâneos) contra cada modo de execução (application.web.execution-mode), com o pool
+// do Tomcat reduzido para o limite aparecer. Sem suporte a virtual threads na JVM o modo virtual usa o async
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class HttpLoadBenchmark extends DatabaseBenchmark {
+	
+	@Param({"platform", "async", "virtual"})
+	private String mode;
+	
+	@Param({"16"})
+	private int tomcatThreads;
+	
+	private HttpClient client;
+	private String baseUrl;
+	
+	@Override
+	protected List<String> applicationArguments() {
+		return Arrays.asList("--application.web.execution-mode=" + mode, "--server.tomcat.threads.max=" + tomcatThreads);
+	}
+	
+	@Override
+	protected void setUp() {
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		baseUrl = "http://localhost:" + localPort();
+	}
+	
+	@Benchmark
+	public int findLoans() throws Exception {
+		String customer = URLEncoder.encode(customer(randomBook()), StandardCharsets.UTF_8);
+		return get("/api/loans?page=0&size=20&customer=" + customer);
+	}
+	
+	@Benchmark
+	public int findBooks() throws Exception {
+		String author = URLEncoder.encode("autor " + randomBook() % 5000, StandardCharsets.UTF_8);
+		return get("/api/books?page=0&size=20&author=" + author);
+	}
+	
+	private int get(String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+		return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+
+}
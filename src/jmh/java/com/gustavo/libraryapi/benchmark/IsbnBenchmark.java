@@ -0,0 +1,58 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.service.BookService;
+
+// Cadastro e busca por isbn usando o índice único. Para o catálogo grande:
+// -Djmh.benchmarks=IsbnBenchmark -Djmh.options="-p books=1000000 -p loansPerBook=0"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IsbnBenchmark extends DatabaseBenchmark {
+	
+	private final AtomicLong sequence = new AtomicLong();
+	
+	private BookService bookService;
+	private BookRepository bookRepository;
+	private TransactionTemplate transactionTemplate;
+	
+	@Override
+	protected void setUp() {
+		bookService = getBean(BookService.class);
+		bookRepository = getBean(BookRepository.class);
+		transactionTemplate = getBean(TransactionTemplate.class);
+	}
+	
+	// Insert com a verificação de unicidade feita pelo índice. A transação é desfeita ao final
+	@Benchmark
+	public Book create() {
+		Book book = Book.builder().title("Livro novo").author("Autor").isbn("978-" + sequence.incrementAndGet()).build();
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			return bookService.save(book);
+		});
+	}
+	
+	// Direto no repositório, sem passar pelo BookService
+	@Benchmark
+	public Optional<Book> findByIsbn() {
+		return bookRepository.findByIsbn(isbn(randomBook()));
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.LoanRepository;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanRepositoryBenchmark extends DatabaseBenchmark {
+	
+	private LoanRepository loanRepository;
+	
+	@Override
+	protected void setUp() {
+		loanRepository = getBean(LoanRepository.class);
+	}
+	
+	@Benchmark
+	public Page<Loan> findByBookIsbn() {
+		return loanRepository.findByBookIsbnOrCustomer(isbn(randomBook()), null, PageRequest.of(0, 20));
+	}
+	
+	@Benchmark
+	public Page<Loan> findByBookIsbnOrCustomer() {
+		int book = randomBook();
+		return loanRepository.findByBookIsbnOrCustomer(isbn(book), customer(book), PageRequest.of(0, 20));
+	}
+
+}
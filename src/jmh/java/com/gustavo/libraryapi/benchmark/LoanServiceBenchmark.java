@@ -0,0 +1,56 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.service.LoanService;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanServiceBenchmark extends DatabaseBenchmark {
+	
+	private LoanService loanService;
+	private TransactionTemplate transactionTemplate;
+	private List<Long> bookIds;
+	
+	@Override
+	protected void setUp() {
+		loanService = getBean(LoanService.class);
+		transactionTemplate = getBean(TransactionTemplate.class);
+		bookIds = getBean(JdbcTemplate.class).queryForList("select id from book order by id", Long.class);
+	}
+	
+	// Verificação de empréstimo em aberto (update condicional da flag "loaned" das estatísticas do livro) + insert. A transação é desfeita ao final
+	// para que o livro continue disponível nas próximas invocações
+	@Benchmark
+	public Loan save() {
+		int book = randomBook();
+		Loan loan = Loan.builder()
+				.book(Book.builder().id(bookIds.get(book)).isbn(isbn(book)).build())
+				.customer(customer(book))
+				.loanDate(LocalDate.now())
+				.build();
+		
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			return loanService.save(loan);
+		});
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.mapper.BookMapper;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+
+// Compara o mapeamento de uma página de entidades para DTOs feito pelo ModelMapper (reflexivo) e pelo MapStruct (gerado)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+	
+	@Param({"20", "100", "1000"})
+	private int pageSize;
+	
+	private ModelMapper modelMapper;
+	private BookMapper bookMapper;
+	private LoanMapper loanMapper;
+	
+	private List<Book> books;
+	private List<Loan> loans;
+	
+	@Setup
+	public void setUp() {
+		modelMapper = new ModelMapper();
+		bookMapper = Mappers.getMapper(BookMapper.class);
+		loanMapper = Mappers.getMapper(LoanMapper.class);
+		
+		books = new ArrayList<>(pageSize);
+		loans = new ArrayList<>(pageSize);
+		for (long i = 0; i < pageSize; i++) {
+			Book book = Book.builder().id(i).title("Livro " + i).author("Autor " + i).isbn("isbn-" + i).build();
+			books.add(book);
+			loans.add(Loan.builder().id(i).book(book).customer("Cliente " + i).customerEmail("cliente" + i + "@email.com")
+					.loanDate(LocalDate.now()).build());
+		}
+	}
+	
+	@Benchmark
+	public List<BookDTO> booksModelMapper() {
+		return books.stream()
+				.map(entity -> modelMapper.map(entity, BookDTO.class))
+				.collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public List<BookDTO> booksMapStruct() {
+		return bookMapper.toDTOList(books);
+	}
+	
+	@Benchmark
+	public List<LoanDTO> loansModelMapper() {
+		return loans.stream()
+				.map(entity -> {
+					BookDTO bookDTO = modelMapper.map(entity.getBook(), BookDTO.class);
+					LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
+					loanDTO.setBook(bookDTO);
+					return loanDTO;
+				}).collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public List<LoanDTO> loansMapStruct() {
+		return loanMapper.toDTOList(loans);
+	}
+
+}
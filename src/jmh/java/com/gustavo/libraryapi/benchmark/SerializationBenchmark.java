@@ -0,0 +1,97 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+
+// Serialização das páginas de livros e empréstimos: PageImpl do Spring (page) x PageDTO (compact), com e sem o
+// Blackbird. O tamanho de cada página (JSON e gzip) é impresso no início de cada combinação
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+	
+	@Param({"20", "100", "1000"})
+	private int pageSize;
+	
+	@Param({"page", "compact"})
+	private String envelope;
+	
+	@Param({"false", "true"})
+	private boolean blackbird;
+	
+	private ObjectMapper objectMapper;
+	
+	private Object books;
+	private Object loans;
+	
+	@Setup
+	public void setUp() throws IOException {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		if(blackbird) {
+			objectMapper.registerModule(new BlackbirdModule());
+		}
+		
+		List<BookDTO> bookList = new ArrayList<>(pageSize);
+		List<LoanDTO> loanList = new ArrayList<>(pageSize);
+		for (long i = 0; i < pageSize; i++) {
+			BookDTO book = BookDTO.builder().id(i).title("Livro " + i).author("Autor " + i).isbn("isbn-" + i).build();
+			bookList.add(book);
+			loanList.add(LoanDTO.builder().id(i).isbn(book.getIsbn()).customer("Cliente " + i)
+					.email("cliente" + i + "@email.com").book(book).build());
+		}
+		PageImpl<BookDTO> bookPage = new PageImpl<>(bookList, PageRequest.of(0, pageSize), 10 * pageSize);
+		PageImpl<LoanDTO> loanPage = new PageImpl<>(loanList, PageRequest.of(0, pageSize), 10 * pageSize);
+		books = envelope.equals("page") ? bookPage : PageDTO.of(bookPage);
+		loans = envelope.equals("page") ? loanPage : PageDTO.of(loanPage);
+		
+		System.out.printf("%n%s, %d: books %d bytes (gzip %d), loans %d bytes (gzip %d)%n", envelope, pageSize,
+				books().length, gzip(books()), loans().length, gzip(loans()));
+	}
+	
+	@Benchmark
+	public byte[] books() throws IOException {
+		return objectMapper.writeValueAsBytes(books);
+	}
+	
+	@Benchmark
+	public byte[] loans() throws IOException {
+		return objectMapper.writeValueAsBytes(loans);
+	}
+	
+	private static int gzip(byte[] json) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+			gzip.write(json);
+		}
+		return buffer.size();
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.gustavo.libraryapi.api.dto.LoanReturnResultDTO;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.service.BookService;
+import com.gustavo.libraryapi.service.LoanService;
+
+// Atualização de livro pelo merge da entidade, como no BookController, e devolução de empréstimo: update direcionado
+// pelo id (caminho atual do endpoint) contra o merge da entidade inteira (save) usado antes. As transações são
+// desfeitas ao final para que os dados não mudem
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateBenchmark extends DatabaseBenchmark {
+	
+	private BookService bookService;
+	private BookRepository bookRepository;
+	private LoanService loanService;
+	private TransactionTemplate transactionTemplate;
+	private List<Book> books;
+	private List<Long> openLoanIds;
+	
+	@Override
+	protected void setUp() {
+		bookService = getBean(BookService.class);
+		bookRepository = getBean(BookRepository.class);
+		loanService = getBean(LoanService.class);
+		transactionTemplate = getBean(TransactionTemplate.class);
+		
+		// Um empréstimo em aberto por livro para as devoluções
+		JdbcTemplate jdbcTemplate = getBean(JdbcTemplate.class);
+		jdbcTemplate.update("insert into loan (customer, customer_email, id_book, loan_date, returned) "
+				+ "select 'Cliente', 'cliente@email.com', id, current_date - 3, false from book");
+		jdbcTemplate.update("update book_loan_statistics set loaned = true, total_loans = total_loans + 1, "
+				+ "last_loan_date = current_date - 3");
+		jdbcTemplate.update("insert into book_loan_statistics (id_book, loaned, total_loans, last_loan_date, returned_loans, "
+				+ "total_loan_days) select id, true, 1, current_date - 3, 0, 0 from book "
+				+ "where id not in (select id_book from book_loan_statistics)");
+		books = bookRepository.findAll(Sort.by("id"));
+		openLoanIds = jdbcTemplate.queryForList("select id from loan where returned = false order by id", Long.class);
+	}
+	
+	// Como o BookController: livro lido pelo id (cache de segundo nível) e mesclado no update
+	@Benchmark
+	public Book updateBook() {
+		Book book = bookService.getById(books.get(randomBook()).getId()).get();
+		book.setTitle(book.getTitle() + " (2ª edição)");
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			return bookService.update(book);
+		});
+	}
+	
+	@Benchmark
+	public LoanReturnResultDTO returnLoan() {
+		Long id = openLoanIds.get(randomBook());
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			return loanService.returnAll(Collections.singletonList(id), Collections.emptyList()).get(0);
+		});
+	}
+	
+	// Como o LoanController antes: empréstimo carregado fora da transação e mesclado no update
+	@Benchmark
+	public Loan returnLoanMerge() {
+		Loan loan = loanService.getById(openLoanIds.get(randomBook())).get();
+		loan.setReturned(true);
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			return loanService.update(loan);
+		});
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.gustavo.libraryapi.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+
+// Escrita (encode) e leitura (decode) das páginas de livros e empréstimos em JSON e em CBOR, com o ObjectMapper
+// configurado como o da aplicação (Blackbird). O tamanho de cada página é impresso no início de cada combinação
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+	
+	private static final TypeReference<PageDTO<BookDTO>> BOOK_PAGE = new TypeReference<PageDTO<BookDTO>>() {};
+	private static final TypeReference<PageDTO<LoanDTO>> LOAN_PAGE = new TypeReference<PageDTO<LoanDTO>>() {};
+	
+	@Param({"20", "100", "1000"})
+	private int pageSize;
+	
+	@Param({"json", "cbor"})
+	private String format;
+	
+	private ObjectMapper objectMapper;
+	
+	private PageDTO<BookDTO> books;
+	private PageDTO<LoanDTO> loans;
+	private byte[] encodedBooks;
+	private byte[] encodedLoans;
+	
+	@Setup
+	public void setUp() throws IOException {
+		Jackson2ObjectMapperBuilder builder = format.equals("cbor")
+				? Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()) : Jackson2ObjectMapperBuilder.json();
+		objectMapper = builder.modulesToInstall(new BlackbirdModule()).build();
+		
+		List<BookDTO> bookList = new ArrayList<>(pageSize);
+		List<LoanDTO> loanList = new ArrayList<>(pageSize);
+		for (long i = 0; i < pageSize; i++) {
+			BookDTO book = BookDTO.builder().id(i).title("Livro " + i).author("Autor " + i).isbn("isbn-" + i).build();
+			bookList.add(book);
+			loanList.add(LoanDTO.builder().id(i).isbn(book.getIsbn()).customer("Cliente " + i)
+					.email("cliente" + i + "@email.com").book(book).build());
+		}
+		books = PageDTO.of(new PageImpl<>(bookList, PageRequest.of(0, pageSize), 10 * pageSize));
+		loans = PageDTO.of(new PageImpl<>(loanList, PageRequest.of(0, pageSize), 10 * pageSize));
+		encodedBooks = encodeBooks();
+		encodedLoans = encodeLoans();
+		
+		System.out.printf("%n%s, %d: books %d bytes, loans %d bytes%n", format, pageSize, encodedBooks.length,
+				encodedLoans.length);
+	}
+	
+	@Benchmark
+	public byte[] encodeBooks() throws IOException {
+		return objectMapper.writeValueAsBytes(books);
+	}
+	
+	@Benchmark
+	public PageDTO<BookDTO> decodeBooks() throws IOException {
+		return objectMapper.readValue(encodedBooks, BOOK_PAGE);
+	}
+	
+	@Benchmark
+	public byte[] encodeLoans() throws IOException {
+		return objectMapper.writeValueAsBytes(loans);
+	}
+	
+	@Benchmark
+	public PageDTO<LoanDTO> decodeLoans() throws IOException {
+		return objectMapper.readValue(encodedLoans, LOAN_PAGE);
+	}
+
+}
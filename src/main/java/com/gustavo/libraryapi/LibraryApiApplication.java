@@ -1,11 +1,14 @@
 package com.gustavo.libraryapi;
 
-import org.modelmapper.ModelMapper;
+import org.mapstruct.factory.Mappers;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import com.gustavo.libraryapi.api.mapper.BookMapper;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
+
 @SpringBootApplication
 @EnableScheduling // Habilita o Scheduling (agendamento de tarefas) na aplicação
 public class LibraryApiApplication {
@@ -14,8 +17,13 @@ public class LibraryApiApplication {
 	private EmailService emailService;
 	*/
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return Mappers.getMapper(BookMapper.class);
+	}
+	
+	@Bean
+	public LoanMapper loanMapper() {
+		return Mappers.getMapper(LoanMapper.class);
 	}
 	/*
 	//Testando serviço de emails
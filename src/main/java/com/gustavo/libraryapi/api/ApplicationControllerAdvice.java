@@ -1,5 +1,6 @@
 package com.gustavo.libraryapi.api;
 
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -29,6 +30,13 @@ public class ApplicationControllerAdvice {
 		return new ApiErrors(ex);
 	}
 	
+	// Conflito de concorrência no banco (lock não obtido a tempo, versão desatualizada): o cliente pode repetir a requisição
+	@ExceptionHandler(ConcurrencyFailureException.class)
+	@ResponseStatus(HttpStatus.CONFLICT)
+	public ApiErrors handleConcurrencyFailureException(ConcurrencyFailureException ex) {
+		return new ApiErrors("Concurrent update, try again");
+	}
+	
 	@ExceptionHandler(ResponseStatusException.class)
 	@ResponseStatus
 	public ResponseEntity handleResponseStatusException(ResponseStatusException ex) {
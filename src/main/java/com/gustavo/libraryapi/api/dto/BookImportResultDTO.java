@@ -0,0 +1,32 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resultado da importação de uma linha (posição do livro no corpo da requisição, começando em 1)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BookImportResultDTO {
+	
+	public enum Status { ACCEPTED, REJECTED }
+	
+	private long row;
+	
+	private String isbn;
+	
+	private Status status;
+	
+	private Long id;
+	
+	private List<String> errors;
+
+}
@@ -0,0 +1,32 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Estatísticas de empréstimo de um livro. É criado direto pela consulta (select new) a partir de BookLoanStatistics,
+// com os contadores zerados enquanto o livro não tem empréstimos
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookLoanStatisticsDTO {
+	
+	private Long totalLoans;
+	
+	private Boolean loaned;
+	
+	private LocalDate lastLoanDate;
+	
+	// Média em dias dos empréstimos já devolvidos, nula enquanto nenhum foi devolvido
+	private Double averageLoanDays;
+	
+	public BookLoanStatisticsDTO(Long totalLoans, Boolean loaned, LocalDate lastLoanDate, Long returnedLoans, 
+			Long totalLoanDays) {
+		this(totalLoans, loaned, lastLoanDate, returnedLoans == 0 ? null : (double) totalLoanDays / returnedLoans);
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Página obtida por cursor (keyset): não possui total de elementos, apenas o cursor da próxima página
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+	
+	private List<T> content;
+	private int size;
+	// Nulo quando não houver próxima página
+	private String next;
+
+}
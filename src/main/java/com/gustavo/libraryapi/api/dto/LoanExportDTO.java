@@ -0,0 +1,29 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Linha da exportação de empréstimos. É criada direto pela consulta (select new), sem entidades no contexto do JPA
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanExportDTO {
+	
+	private Long id;
+	
+	private String isbn;
+	
+	private String customer;
+	
+	private String email;
+	
+	private LocalDate loanDate;
+	
+	private Boolean returned;
+
+}
@@ -0,0 +1,21 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Devolução em lote: empréstimos pelo id e/ou pelo isbn do livro emprestado
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanReturnDTO {
+	
+	private List<Long> ids;
+	
+	private List<String> isbns;
+
+}
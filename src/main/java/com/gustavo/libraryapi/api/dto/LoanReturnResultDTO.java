@@ -0,0 +1,26 @@
+package com.gustavo.libraryapi.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resultado da devolução de um item do lote: o id do empréstimo e/ou o isbn informado
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoanReturnResultDTO {
+	
+	public enum Status { RETURNED, ALREADY_RETURNED, NOT_FOUND }
+	
+	private Long id;
+	
+	private String isbn;
+	
+	private Status status;
+
+}
@@ -0,0 +1,36 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import lombok.Value;
+
+// Cursor opaco usado na paginação por chave: guarda a chave de ordenação e o id do último registro da página
+@Value
+public class PageCursor {
+	
+	private static final String SEPARATOR = ":";
+	
+	String key;
+	Long id;
+	
+	public String encode() {
+		String value = id + SEPARATOR + key;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	// Um token vazio representa a primeira página
+	public static PageCursor decode(String token) {
+		if(token == null || token.isEmpty()) {
+			return null;
+		}
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int separator = value.indexOf(SEPARATOR);
+			return new PageCursor(value.substring(separator + 1), Long.valueOf(value.substring(0, separator)));
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Invalid cursor", e);
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.gustavo.libraryapi.api.dto;
+
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Página das listagens: só os dados usados pelos clientes, com os mesmos nomes do Page do Spring. O PageImpl também
+// serializa o pageable e o sort (com os dados da página repetidos), que ocupam mais do que o conteúdo em páginas pequenas.
+// Sem contagem (Slice) o total de elementos e de páginas não vai na resposta
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PageDTO<T> {
+	
+	private List<T> content;
+	private int number;
+	private int size;
+	private boolean last;
+	private Long totalElements;
+	private Integer totalPages;
+	
+	public static <T> PageDTO<T> of(Slice<T> slice) {
+		PageDTO<T> page = new PageDTO<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.isLast(), null, null);
+		if(slice instanceof Page) {
+			page.setTotalElements(((Page<T>) slice).getTotalElements());
+			page.setTotalPages(((Page<T>) slice).getTotalPages());
+		}
+		return page;
+	}
+
+}
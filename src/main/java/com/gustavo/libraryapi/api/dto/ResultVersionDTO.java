@@ -0,0 +1,45 @@
+package com.gustavo.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Resumo de um resultado de busca usado no ETag das listagens e no total das páginas. É criado direto pela consulta
+// (select new): a quantidade e a soma dos ids mudam quando um registro entra ou sai do resultado e o hash quando um
+// deles é alterado. O hash é a soma do ORA_HASH do H2 de cada par (id, versão): somar só ids e versões deixaria trocas
+// como {1, 4} por {2, 3}, nas mesmas versões, com o mesmo ETag. Uma soma de hashes ainda pode colidir, por isso o ETag
+// é fraco (W/)
+@Data
+@AllArgsConstructor
+public class ResultVersionDTO {
+	
+	// Junta id e versão em um só valor para o ORA_HASH, sem que dois pares diferentes deem o mesmo valor
+	public static final long ID_SHIFT = 4294967296L;
+	
+	private Long count;
+	
+	// Nulos quando o resultado é vazio
+	private Long idSum;
+	
+	private Long hash;
+	
+	// Quantidade estimada pelas estatísticas do banco ou reaproveitada do cache de contagens (CountMode.CACHED), sem
+	// as somas: pode estar defasada
+	private boolean estimated;
+	
+	public ResultVersionDTO(Long count, Long idSum, Long hash) {
+		this(count, idSum, hash, false);
+	}
+	
+	public static ResultVersionDTO estimated(long count) {
+		return new ResultVersionDTO(count, null, null, true);
+	}
+	
+	// Nulo quando a quantidade é estimada: sem as versões atuais dos registros não há como saber se o resultado mudou
+	public String toETag() {
+		if(estimated) {
+			return null;
+		}
+		return count + "-" + (idSum == null ? 0 : idSum) + "-" + (hash == null ? 0 : hash);
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.gustavo.libraryapi.api.mapper;
+
+import java.util.List;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.ReportingPolicy;
+
+import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.model.entity.Book;
+
+// A implementação é gerada em tempo de compilação pelo MapStruct (sem reflexão)
+@Mapper(unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface BookMapper {
+	
+	BookDTO toDTO(Book book);
+	
+	Book toEntity(BookDTO dto);
+	
+	// A lista de destino é criada já com o tamanho da página
+	List<BookDTO> toDTOList(List<Book> books);
+
+}
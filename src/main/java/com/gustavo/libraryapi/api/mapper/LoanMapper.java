@@ -0,0 +1,22 @@
+package com.gustavo.libraryapi.api.mapper;
+
+import java.util.List;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.model.entity.Loan;
+
+// O livro do empréstimo é mapeado pelo BookMapper
+@Mapper(uses = BookMapper.class, unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface LoanMapper {
+	
+	@Mapping(target = "isbn", source = "book.isbn")
+	@Mapping(target = "email", source = "customerEmail")
+	LoanDTO toDTO(Loan loan);
+	
+	List<LoanDTO> toDTOList(List<Loan> loans);
+
+}
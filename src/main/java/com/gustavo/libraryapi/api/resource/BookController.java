@@ -1,15 +1,30 @@
 package com.gustavo.libraryapi.api.resource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -17,15 +32,31 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.BookImportResultDTO;
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.api.dto.CursorPageDTO;
 import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.PageCursor;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
+import com.gustavo.libraryapi.api.mapper.BookMapper;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
 import com.gustavo.libraryapi.service.BookService;
+import com.gustavo.libraryapi.service.CountMode;
 import com.gustavo.libraryapi.service.LoanService;
 
 import io.swagger.annotations.Api;
@@ -40,14 +71,35 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class BookController {
 	
+	private static final int MAX_CURSOR_PAGE_SIZE = 2000;
+	
 	private BookService service;
-	private ModelMapper modelMapper;
+	private BookMapper bookMapper;
 	private LoanService loanService;
+	private LoanMapper loanMapper;
+	private ObjectMapper objectMapper;
+	private Validator validator;
+	
+	// Quantidade de livros verificados e inseridos por transação na importação
+	@Value("${application.books.import.chunk-size:500}")
+	private int importChunkSize;
+	
+	// Por quanto tempo navegadores e CDNs reutilizam um livro ou uma listagem sem revalidar o ETag
+	@Value("${application.http.books.max-age:60s}")
+	private Duration booksMaxAge;
 	
-	public BookController(BookService service, ModelMapper mapper, LoanService loanService) {
+	// Estratégia de contagem das listagens quando a requisição não informa o parâmetro count
+	@Value("${application.paging.count:exact}")
+	private CountMode defaultCountMode;
+	
+	public BookController(BookService service, BookMapper bookMapper, LoanService loanService, LoanMapper loanMapper, 
+			ObjectMapper objectMapper, Validator validator) {
 		this.service = service;
-		this.modelMapper = mapper;
+		this.bookMapper = bookMapper;
 		this.loanService = loanService;
+		this.loanMapper = loanMapper;
+		this.objectMapper = objectMapper;
+		this.validator = validator;
 	}
 	
 	@PostMapping
@@ -58,20 +110,131 @@ public class BookController {
     })
 	public BookDTO create(@RequestBody @Valid BookDTO dto) {
 		log.info("creating a book for isbn: {}", dto.getIsbn());
-		Book entity = modelMapper.map(dto, Book.class);
+		Book entity = bookMapper.toEntity(dto);
 		entity = service.save(entity);
-		return modelMapper.map(entity, BookDTO.class);
+		return bookMapper.toDTO(entity);
+	}
+	
+	@PostMapping(value = "import", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	@ApiOperation("Imports books from a JSON array or NDJSON body, responding with one NDJSON result per book")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Import processed, each line tells if the book was accepted or rejected")
+    })
+	public void importBooks(InputStream body, HttpServletResponse response) throws IOException {
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+		OutputStream out = response.getOutputStream();
+		
+		// O corpo é lido livro a livro (sem carregar a lista inteira) e o resultado é escrito a cada bloco
+		long row = 0, accepted = 0;
+		List<BookImportResultDTO> pending = new ArrayList<>();
+		List<Book> chunk = new ArrayList<>();
+		try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+			JsonToken token = parser.nextToken();
+			if(token == JsonToken.START_ARRAY) {
+				token = parser.nextToken();
+			}
+			while(token != null && token != JsonToken.END_ARRAY) {
+				JsonNode node = parser.readValueAsTree();
+				row++;
+				BookImportResultDTO result = BookImportResultDTO.builder().row(row).build();
+				BookDTO dto = readImportedBook(node, result);
+				if(dto != null) {
+					chunk.add(bookMapper.toEntity(dto));
+				}
+				pending.add(result);
+				
+				// Linhas rejeitadas também ocupam o buffer: sem o limite em pending, um corpo só com livros inválidos
+				// ficaria todo na memória até o fim
+				if(chunk.size() == importChunkSize || pending.size() >= importChunkSize) {
+					accepted += importChunk(chunk, pending, out);
+				}
+				token = parser.nextToken();
+			}
+		} catch (JsonProcessingException e) {
+			// Erro de sintaxe: não é possível continuar a leitura, o restante do corpo é descartado
+			pending.add(BookImportResultDTO.builder().row(row + 1).status(BookImportResultDTO.Status.REJECTED)
+					.errors(Collections.singletonList("Invalid JSON: " + e.getOriginalMessage())).build());
+		}
+		accepted += importChunk(chunk, pending, out);
+		log.info("imported {} of {} books", accepted, row);
+	}
+	
+	// Retorna null quando o livro é inválido, deixando o resultado da linha como rejeitado
+	private BookDTO readImportedBook(JsonNode node, BookImportResultDTO result) {
+		if(!node.isObject()) {
+			return reject(result, Collections.singletonList("Invalid book"));
+		}
+		BookDTO dto;
+		try {
+			dto = objectMapper.treeToValue(node, BookDTO.class);
+		} catch (JsonProcessingException e) {
+			return reject(result, Collections.singletonList("Invalid book: " + e.getOriginalMessage()));
+		}
+		result.setIsbn(dto.getIsbn());
+		
+		List<String> errors = validator.validate(dto).stream()
+				.map(this::violationMessage)
+				.sorted()
+				.collect(Collectors.toList());
+		if(!errors.isEmpty()) {
+			return reject(result, errors);
+		}
+		// O id é sempre gerado pelo banco
+		dto.setId(null);
+		return dto;
+	}
+	
+	private BookDTO reject(BookImportResultDTO result, List<String> errors) {
+		result.setStatus(BookImportResultDTO.Status.REJECTED);
+		result.setErrors(errors);
+		return null;
+	}
+	
+	private String violationMessage(ConstraintViolation<BookDTO> violation) {
+		return violation.getPropertyPath() + " " + violation.getMessage();
+	}
+	
+	// Importa o bloco e escreve o resultado de todas as linhas pendentes, na ordem em que vieram
+	private long importChunk(List<Book> chunk, List<BookImportResultDTO> pending, OutputStream out) throws IOException {
+		Set<Book> saved = Collections.newSetFromMap(new IdentityHashMap<>());
+		if(!chunk.isEmpty()) {
+			saved.addAll(service.importBooks(chunk));
+		}
+		
+		int next = 0;
+		for(BookImportResultDTO result : pending) {
+			if(result.getStatus() == null) {
+				Book book = chunk.get(next++);
+				if(saved.contains(book)) {
+					result.setStatus(BookImportResultDTO.Status.ACCEPTED);
+					result.setId(book.getId());
+				} else {
+					result.setStatus(BookImportResultDTO.Status.REJECTED);
+					result.setErrors(Collections.singletonList("Isbn já cadastrado."));
+				}
+			}
+			out.write(objectMapper.writeValueAsBytes(result));
+			out.write('\n');
+		}
+		out.flush();
+		
+		pending.clear();
+		chunk.clear();
+		return saved.size();
 	}
 	
 	@GetMapping("{id}")
 	@ApiOperation("Obtains a book details by id")
 	@ApiResponses(value = {
-            @ApiResponse(code = 200, message = "Book obtained successfully")
+            @ApiResponse(code = 200, message = "Book obtained successfully"),
+            @ApiResponse(code = 304, message = "Book not modified since the version in If-None-Match")
     })
-	public BookDTO get(@PathVariable Long id) {
+	public ResponseEntity<BookDTO> get(@PathVariable Long id, WebRequest request) {
 		log.info("obtaining details for book id: {}", id);
-		return service.getById(id).map(book -> modelMapper.map(book, BookDTO.class))
-				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)); 
+		Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)); 
+		return ConditionalResponses.of(request, String.valueOf(book.getVersion()), booksCacheControl(), 
+				() -> bookMapper.toDTO(book));
 		//ResponseStatusException é uma alternativa programática para @ResponseStatus e é a classe 
 		//base para exceções usadas para aplicar um código de status a uma resposta HTTP. 
 		//https://stackabuse.com/how-to-return-http-status-codes-in-a-spring-boot-application/
@@ -100,28 +263,68 @@ public class BookController {
 			
 			book.setAuthor(dto.getAuthor());
 			book.setTitle(dto.getTitle());
-			book = service.update(book);
-			return modelMapper.map(book, BookDTO.class);
+			return bookMapper.toDTO(service.update(book));
 			
 		}).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-		
 	}
 	
 	@GetMapping
 	@ApiOperation("Find books by params")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Books found successfully "),
+            @ApiResponse(code = 304, message = "Books not modified since the version in If-None-Match")
+    })
+	public ResponseEntity<PageDTO<BookDTO>> find(BookDTO dto, Pageable pageRequest, 
+			@RequestParam(required = false) CountMode count, WebRequest request) {
+		Book filter = bookMapper.toEntity(dto);
+		
+		// A consulta de versão (agregação) dá o ETag e o total da página, que só é buscada e mapeada se o cliente não
+		// tem a versão atual. Com count=estimated sem ETag e com count=none sem total e sem ETag
+		Optional<ResultVersionDTO> version = service.findVersion(filter, count == null ? defaultCountMode : count);
+		String etag = version.map(ResultVersionDTO::toETag).orElse(null);
+		
+		return ConditionalResponses.of(request, etag, booksCacheControl(), 
+				() -> PageDTO.of(service.find(filter, pageRequest, version.orElse(null)).map(bookMapper::toDTO)));
+	}
+	
+	@GetMapping("search")
+	@ApiOperation("Full-text search on title and author, ordered by relevance")
 	@ApiResponses(value = {
             @ApiResponse(code = 200, message = "Books found successfully ")
     })
-	public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
-		Book filter = modelMapper.map(dto, Book.class);
+	public PageDTO<BookDTO> search(@RequestParam String q, Pageable pageRequest) {
+		Page<Book> result = service.search(q, pageRequest);
 		
-		Page<Book> result = service.find(filter, pageRequest);
+		List<BookDTO> list = bookMapper.toDTOList(result.getContent());
 		
-		List<BookDTO> list = result.getContent().stream()
-				.map(entity -> modelMapper.map(entity, BookDTO.class))
-				.collect(Collectors.toList());
+		return PageDTO.of(new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements()));
+	}
+	
+	@GetMapping(params = "after")
+	@ApiOperation("Find books by params using a cursor (keyset pagination)")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Books found successfully ")
+    })
+	public CursorPageDTO<BookDTO> findAfter(BookDTO dto, @RequestParam String after, 
+			@RequestParam(defaultValue = "20") int size) {
+		Book filter = bookMapper.toEntity(dto);
+		Book last = decodeCursor(after).map(cursor -> Book.builder().id(cursor.getId()).title(cursor.getKey()).build())
+				.orElse(null);
+		int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+		
+		// Busca um registro a mais apenas para saber se existe próxima página
+		List<Book> result = service.findAfter(filter, last, pageSize + 1);
+		boolean hasNext = result.size() > pageSize;
+		List<Book> page = hasNext ? result.subList(0, pageSize) : result;
+		
+		List<BookDTO> list = bookMapper.toDTOList(page);
 		
-		return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+		String next = null;
+		if(hasNext) {
+			Book lastBook = page.get(page.size() - 1);
+			next = new PageCursor(lastBook.getTitle(), lastBook.getId()).encode();
+		}
+		return new CursorPageDTO<BookDTO>(list, pageSize, next);
 	}
 	
 	@GetMapping("{id}/loans")
@@ -129,19 +332,33 @@ public class BookController {
 	@ApiResponses(value = {
             @ApiResponse(code = 200, message = "Loans found successfully")
     })
-	public Page<LoanDTO> loanByBook(@PathVariable Long id, Pageable pageable) {
+	public PageDTO<LoanDTO> loanByBook(@PathVariable Long id, Pageable pageable) {
 		Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 		Page<Loan> result =  loanService.getLoanByBook(book, pageable);
-		List<LoanDTO> list = result.getContent()
-				.stream()
-				.map(loan -> {
-					Book loanBook = loan.getBook();
-					BookDTO bookDTO = modelMapper.map(loanBook, BookDTO.class);
-					LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-					loanDTO.setBook(bookDTO);
-					return loanDTO;
-				}).collect(Collectors.toList());
-		return new PageImpl<LoanDTO>(list, pageable, result.getTotalElements());
+		List<LoanDTO> list = loanMapper.toDTOList(result.getContent());
+		return PageDTO.of(new PageImpl<LoanDTO>(list, pageable, result.getTotalElements()));
+	}
+	
+	@GetMapping("{id}/statistics")
+	@ApiOperation("Obtains the loan statistics of a book")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Statistics obtained successfully")
+    })
+	public BookLoanStatisticsDTO loanStatistics(@PathVariable Long id) {
+		return service.getLoanStatistics(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	}
+	
+	// Livros não têm dados pessoais: podem ficar no cache compartilhado (CDN)
+	private CacheControl booksCacheControl() {
+		return CacheControl.maxAge(booksMaxAge).cachePublic();
+	}
+	
+	private Optional<PageCursor> decodeCursor(String after) {
+		try {
+			return Optional.ofNullable(PageCursor.decode(after));
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+		}
 	}
 	
 }
@@ -0,0 +1,28 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.util.function.Supplier;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+// Respostas de GET com ETag: quando o If-None-Match do cliente é igual ao ETag atual a resposta é 304 e o corpo
+// (consulta, mapeamento e serialização) não é gerado. O ETag também vai na resposta 200, pelo checkNotModified.
+// Sem ETag (nulo) a resposta é sempre 200. O ETag é fraco (W/): identifica a versão dos dados e não os bytes da
+// resposta, que mudam com a compressão (o Tomcat não comprime respostas com ETag forte). O Vary: Accept separa nos caches
+// as respostas em JSON e em CBOR da mesma URL
+final class ConditionalResponses {
+	
+	private ConditionalResponses() {
+	}
+	
+	static <T> ResponseEntity<T> of(WebRequest request, String etag, CacheControl cacheControl, Supplier<T> body) {
+		if(etag != null && request.checkNotModified("W/\"" + etag + "\"")) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).varyBy(HttpHeaders.ACCEPT).build();
+		}
+		return ResponseEntity.ok().cacheControl(cacheControl).varyBy(HttpHeaders.ACCEPT).body(body.get());
+	}
+
+}
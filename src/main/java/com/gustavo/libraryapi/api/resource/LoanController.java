@@ -1,31 +1,55 @@
 package com.gustavo.libraryapi.api.resource;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
-import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gustavo.libraryapi.api.dto.CursorPageDTO;
 import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
 import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnResultDTO;
+import com.gustavo.libraryapi.api.dto.PageCursor;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.api.dto.ReturnedLoanDTO;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
 import com.gustavo.libraryapi.service.BookService;
+import com.gustavo.libraryapi.service.CountMode;
 import com.gustavo.libraryapi.service.LoanService;
 
 import io.swagger.annotations.Api;
@@ -33,16 +57,28 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @RestController
 @RequestMapping("/api/loans")
 @RequiredArgsConstructor // Gera um construtor com argumentos necessários (Ex: final e @NonNull)
 @Api("Loan API")
+@Slf4j
 public class LoanController {
 	
+	private static final int MAX_CURSOR_PAGE_SIZE = 2000;
+	
+	// Itens (ids + isbns) por devolução em lote, para manter as listas do IN e a transação pequenas
+	private static final int MAX_RETURN_BATCH_SIZE = 1000;
+	
 	private final LoanService loanService;
 	private final BookService bookService; 
-	private final ModelMapper modelMapper;
+	private final LoanMapper loanMapper;
+	private final ObjectMapper objectMapper;
+	
+	// Estratégia de contagem da listagem quando a requisição não informa o parâmetro count
+	@Value("${application.paging.count:exact}")
+	private CountMode defaultCountMode;
 	
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
@@ -69,29 +105,139 @@ public class LoanController {
             @ApiResponse(code = 200, message = "Book returned successfully")
     })
 	public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
+		// Devolução pelo id com updates direcionados, sem carregar e mesclar o empréstimo. Reabrir um empréstimo
+		// (returned = false) continua pelo update completo, que verifica se o livro foi emprestado novamente
+		if(Boolean.TRUE.equals(dto.getReturned())) {
+			LoanReturnResultDTO result = loanService.returnAll(Collections.singletonList(id), Collections.emptyList()).get(0);
+			if(result.getStatus() == LoanReturnResultDTO.Status.NOT_FOUND) {
+				throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+			}
+			return;
+		}
 		Loan loan = loanService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 		loan.setReturned(dto.getReturned());
 		loanService.update(loan);		
 	}
 	
+	@PostMapping("returns")
+	@ApiOperation("Returns many books at once, by loan id or book isbn")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Result of each returned item")
+    })
+	public List<LoanReturnResultDTO> returnBooks(@RequestBody LoanReturnDTO dto) {
+		List<Long> ids = dto.getIds() == null ? Collections.emptyList() : dto.getIds();
+		List<String> isbns = dto.getIsbns() == null ? Collections.emptyList() : dto.getIsbns();
+		if(ids.size() + isbns.size() > MAX_RETURN_BATCH_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_RETURN_BATCH_SIZE + " loans per request");
+		}
+		return loanService.returnAll(ids, isbns);
+	}
+	
 	@GetMapping
 	@ApiOperation("Find loans by params")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Loans found successfully "),
+            @ApiResponse(code = 304, message = "Loans not modified since the version in If-None-Match")
+    })
+	public ResponseEntity<PageDTO<LoanDTO>> find(LoanFilterDTO dto, Pageable pageRequest, 
+			@RequestParam(required = false) CountMode count, WebRequest request) {
+		// A consulta de versão dá o ETag e o total da página (ver BookController.find)
+		Optional<ResultVersionDTO> version = loanService.findVersion(dto, count == null ? defaultCountMode : count);
+		String etag = version.map(ResultVersionDTO::toETag).orElse(null);
+		// Os empréstimos têm dados dos clientes: ficam só no cache do navegador, que revalida o ETag a cada uso
+		return ConditionalResponses.of(request, etag, CacheControl.noCache().cachePrivate(), 
+				() -> PageDTO.of(loanService.find(dto, pageRequest, version.orElse(null)).map(loanMapper::toDTO)));
+	}
+	
+	@GetMapping(params = "after")
+	@ApiOperation("Find loans by params using a cursor (keyset pagination)")
 	@ApiResponses(value = {
             @ApiResponse(code = 200, message = "Loans found successfully ")
     })
-	public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest) {
-		Page<Loan> result = loanService.find(dto, pageRequest);
-		List<LoanDTO> loans = result
-				.getContent()
-				.stream()
-				.map(entity -> {
-					Book book = entity.getBook();
-					BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-					LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
-					loanDTO.setBook(bookDTO);
-					return loanDTO;
-				}).collect(Collectors.toList());
-		return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
+	public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO dto, @RequestParam String after, 
+			@RequestParam(defaultValue = "20") int size) {
+		Loan last = decodeCursor(after)
+				.map(cursor -> Loan.builder().id(cursor.getId()).loanDate(LocalDate.parse(cursor.getKey())).build())
+				.orElse(null);
+		int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+		
+		// Busca um registro a mais apenas para saber se existe próxima página
+		List<Loan> result = loanService.findAfter(dto, last, pageSize + 1);
+		boolean hasNext = result.size() > pageSize;
+		List<Loan> page = hasNext ? result.subList(0, pageSize) : result;
+		
+		List<LoanDTO> loans = loanMapper.toDTOList(page);
+		
+		String next = null;
+		if(hasNext) {
+			Loan lastLoan = page.get(page.size() - 1);
+			next = new PageCursor(lastLoan.getLoanDate().toString(), lastLoan.getId()).encode();
+		}
+		return new CursorPageDTO<LoanDTO>(loans, pageSize, next);
+	}
+	
+	@GetMapping("export")
+	@ApiOperation("Exports all loans filtered by params as NDJSON or CSV")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Loans exported successfully"),
+            @ApiResponse(code = 400, message = "Unsupported export format")
+    })
+	public void export(LoanFilterDTO dto, 
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+		boolean csv = "csv".equalsIgnoreCase(format);
+		if(!csv && !"ndjson".equalsIgnoreCase(format)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported export format");
+		}
+		response.setContentType(csv ? "text/csv" : MediaType.APPLICATION_NDJSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loans." + (csv ? "csv" : "ndjson") + "\"");
+		
+		// Cada linha é escrita assim que sai do banco, sem montar a lista de empréstimos em memória
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		if(csv) {
+			writer.write("id,isbn,customer,email,loanDate,returned\n");
+		}
+		long count;
+		try {
+			count = loanService.export(dto, from, to, loan -> {
+				try {
+					writer.write(csv ? toCsv(loan) : objectMapper.writeValueAsString(loan));
+					writer.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		writer.flush();
+		log.info("exported {} loans as {}", count, csv ? "csv" : "ndjson");
+	}
+	
+	private String toCsv(LoanExportDTO loan) {
+		return String.join(",", String.valueOf(loan.getId()), csvValue(loan.getIsbn()), csvValue(loan.getCustomer()), 
+				csvValue(loan.getEmail()), String.valueOf(loan.getLoanDate()), String.valueOf(loan.getReturned()));
+	}
+	
+	// Valores com vírgula, aspas ou quebra de linha vão entre aspas (RFC 4180)
+	private String csvValue(String value) {
+		if(value == null) {
+			return "";
+		}
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+	
+	private Optional<PageCursor> decodeCursor(String after) {
+		try {
+			return Optional.ofNullable(PageCursor.decode(after));
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+		}
 	}
 
 }
@@ -0,0 +1,62 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.util.NoSuchElementException;
+
+import org.springframework.context.annotation.Conditional;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.mapper.BookMapper;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
+import com.gustavo.libraryapi.config.R2dbcConfig;
+import com.gustavo.libraryapi.service.ReactiveBookService;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+
+// Variante reativa das leituras de livros, escolhida pelo Accept: application/x-ndjson. Cada livro é escrito assim
+// que chega do banco e a leitura só avança conforme a resposta é enviada ao cliente (backpressure)
+@RestController
+@Conditional(R2dbcConfig.H2Database.class)
+@RequestMapping(value = "/api/books", produces = MediaType.APPLICATION_NDJSON_VALUE)
+@RequiredArgsConstructor
+@Api("Book API (reactive)")
+public class ReactiveBookController {
+	
+	private final ReactiveBookService service;
+	private final BookMapper bookMapper;
+	private final LoanMapper loanMapper;
+	
+	@GetMapping
+	@ApiOperation("Streams books by params")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Books found successfully")
+    })
+	public Flux<BookDTO> find(BookDTO dto) {
+		return service.find(bookMapper.toEntity(dto)).map(bookMapper::toDTO);
+	}
+	
+	@GetMapping("{id}/loans")
+	@ApiOperation("Streams the loans of a book")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Loans found successfully"),
+            @ApiResponse(code = 404, message = "Book not found")
+    })
+	public Flux<LoanDTO> loansByBook(@PathVariable Long id) {
+		return service.getLoansByBook(id)
+				.onErrorMap(NoSuchElementException.class, e -> new ResponseStatusException(HttpStatus.NOT_FOUND))
+				.map(loanMapper::toDTO);
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.gustavo.libraryapi.api.resource;
+
+import org.springframework.context.annotation.Conditional;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
+import com.gustavo.libraryapi.config.R2dbcConfig;
+import com.gustavo.libraryapi.service.ReactiveLoanService;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+
+// Variante reativa da listagem de empréstimos, escolhida pelo Accept: application/x-ndjson
+@RestController
+@Conditional(R2dbcConfig.H2Database.class)
+@RequestMapping(value = "/api/loans", produces = MediaType.APPLICATION_NDJSON_VALUE)
+@RequiredArgsConstructor
+@Api("Loan API (reactive)")
+public class ReactiveLoanController {
+	
+	private final ReactiveLoanService loanService;
+	private final LoanMapper loanMapper;
+	
+	@GetMapping
+	@ApiOperation("Streams loans by params")
+	@ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Loans found successfully")
+    })
+	public Flux<LoanDTO> find(LoanFilterDTO dto) {
+		return loanService.find(dto).map(loanMapper::toDTO);
+	}
+
+}
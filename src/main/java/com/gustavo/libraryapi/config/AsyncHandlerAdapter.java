@@ -0,0 +1,47 @@
+package com.gustavo.libraryapi.config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+
+import org.springframework.core.ReactiveAdapterRegistry;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+// Modo async: o método do controlador é devolvido ao Spring MVC como um Callable, executado no executor limitado do
+// modo enquanto a thread do Tomcat volta para o pool. Os parâmetros são lidos e validados antes, na thread do Tomcat, e
+// a resposta é escrita no async dispatch com os mesmos conversores, ETags e tratamento de erros. O EntityManager da
+// requisição (open in view) acompanha o Callable. Métodos void (escrevem direto na resposta) e os que já são
+// assíncronos (reativos, streaming) continuam como antes
+class AsyncHandlerAdapter extends RequestMappingHandlerAdapter {
+	
+	private static final List<Class<?>> ASYNC_TYPES = Arrays.asList(Callable.class, WebAsyncTask.class, DeferredResult.class,
+			CompletionStage.class, ListenableFuture.class, ResponseBodyEmitter.class, StreamingResponseBody.class);
+	
+	@Override
+	protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+		if(!runsOnExecutor(handlerMethod)) {
+			return super.createInvocableHandlerMethod(handlerMethod);
+		}
+		return new ServletInvocableHandlerMethod(handlerMethod) {
+			@Override
+			protected Object doInvoke(Object... args) {
+				return (Callable<Object>) () -> super.doInvoke(args);
+			}
+		};
+	}
+	
+	private static boolean runsOnExecutor(HandlerMethod handlerMethod) {
+		Class<?> type = handlerMethod.getReturnType().getParameterType();
+		return !handlerMethod.isVoid() && ReactiveAdapterRegistry.getSharedInstance().getAdapter(type) == null
+				&& ASYNC_TYPES.stream().noneMatch(async -> async.isAssignableFrom(type));
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.gustavo.libraryapi.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Conversor JSON que envia Content-Length nas respostas pequenas. Sem ele a resposta vai em chunks e o Tomcat comprime
+// mesmo as menores que server.compression.min-response-size, gastando CPU para ganhar poucos bytes.
+// Custo: o JSON é gerado em memória até o limite, uma cópia a mais por resposta. Acima do limite a resposta seria
+// comprimida de qualquer jeito, então o que já foi gerado é enviado e o resto segue direto para a resposta
+class ContentLengthJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+	
+	private final int limit;
+	
+	ContentLengthJsonHttpMessageConverter(ObjectMapper objectMapper, int limit) {
+		super(objectMapper);
+		this.limit = limit;
+	}
+	
+	@Override
+	protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+		BufferedOutputMessage buffered = new BufferedOutputMessage(outputMessage, limit);
+		super.writeInternal(object, type, buffered);
+		buffered.complete();
+	}
+	
+	private static class BufferedOutputMessage extends OutputStream implements HttpOutputMessage {
+		
+		private final HttpOutputMessage target;
+		private final int limit;
+		private final ByteArrayOutputStream buffer;
+		// Corpo da resposta, obtido só quando o JSON passa do limite
+		private OutputStream body;
+		
+		BufferedOutputMessage(HttpOutputMessage target, int limit) {
+			this.target = target;
+			this.limit = limit;
+			this.buffer = new ByteArrayOutputStream(limit);
+		}
+		
+		@Override
+		public HttpHeaders getHeaders() {
+			return target.getHeaders();
+		}
+		
+		@Override
+		public OutputStream getBody() {
+			return this;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if(body == null && buffer.size() + length <= limit) {
+				buffer.write(bytes, offset, length);
+				return;
+			}
+			if(body == null) {
+				body = target.getBody();
+				buffer.writeTo(body);
+			}
+			body.write(bytes, offset, length);
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			if(body != null) {
+				body.flush();
+			}
+		}
+		
+		void complete() throws IOException {
+			if(body == null) {
+				target.getHeaders().setContentLength(buffer.size());
+				buffer.writeTo(target.getBody());
+			}
+		}
+	
+	}
+
+}
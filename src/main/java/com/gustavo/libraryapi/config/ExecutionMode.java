@@ -0,0 +1,57 @@
+package com.gustavo.libraryapi.config;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Modo de execução das requisições HTTP: threads do pool do Tomcat (platform), métodos dos controladores em um executor
+// limitado com a thread do Tomcat liberada (async, AsyncHandlerAdapter) ou uma virtual thread por requisição (virtual,
+// Java 21 ou superior). O projeto é compilado para Java 11, por isso o executor de virtual threads é obtido por reflexão
+public enum ExecutionMode {
+	
+	PLATFORM, ASYNC, VIRTUAL;
+	
+	public String tag() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+	
+	public static ExecutionMode parse(String configured) {
+		return ExecutionMode.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+	}
+	
+	// Modo efetivo para o valor configurado
+	public static ExecutionMode resolve(String configured) {
+		return parse(configured).effective();
+	}
+	
+	// Sem suporte a virtual threads na JVM, o modo virtual usa o async, que também libera as threads do Tomcat
+	public ExecutionMode effective() {
+		return this == VIRTUAL && !virtualThreadsAvailable() ? ASYNC : this;
+	}
+	
+	public static boolean virtualThreadsAvailable() {
+		return virtualThreadFactoryMethod().isPresent();
+	}
+	
+	// Executors.newVirtualThreadPerTaskExecutor(), quando existir
+	public static Optional<ExecutorService> virtualThreadExecutor() {
+		return virtualThreadFactoryMethod().map(factory -> {
+			try {
+				return (ExecutorService) factory.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Unable to create the virtual thread executor", e);
+			}
+		});
+	}
+	
+	private static Optional<Method> virtualThreadFactoryMethod() {
+		try {
+			return Optional.of(Executors.class.getMethod("newVirtualThreadPerTaskExecutor"));
+		} catch (NoSuchMethodException e) {
+			return Optional.empty();
+		}
+	}
+
+}
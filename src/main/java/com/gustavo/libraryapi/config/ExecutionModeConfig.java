@@ -0,0 +1,205 @@
+package com.gustavo.libraryapi.config;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+@Configuration
+@Slf4j
+public class ExecutionModeConfig {
+	
+	private static final String EXECUTION_MODE = "application.web.execution-mode";
+	
+	@Bean
+	public ExecutionMode executionMode(@Value("${" + EXECUTION_MODE + ":platform}") String configured) {
+		ExecutionMode mode = ExecutionMode.parse(configured);
+		if(mode.effective() != mode) {
+			log.warn("{} threads are not available on Java {}, using the {} mode", mode.tag(), 
+					System.getProperty("java.version"), mode.effective().tag());
+		}
+		log.info("http requests execution mode: {}", mode.effective().tag());
+		return mode.effective();
+	}
+	
+	// No modo virtual o Tomcat executa cada requisição em uma virtual thread em vez do pool limitado
+	// (server.tomcat.threads.max). Nos outros modos o executor padrão do Tomcat é mantido
+	@Bean
+	public TomcatProtocolHandlerCustomizer<ProtocolHandler> executionModeCustomizer(ExecutionMode mode) {
+		return protocolHandler -> {
+			if(mode == ExecutionMode.VIRTUAL) {
+				ExecutionMode.virtualThreadExecutor().ifPresent(protocolHandler::setExecutor);
+			}
+		};
+	}
+	
+	// Todas as métricas levam o modo, para comparar as execuções (ex: http.server.requests por execution.mode)
+	@Bean
+	public MeterRegistryCustomizer<MeterRegistry> executionModeTag(ExecutionMode mode) {
+		return registry -> registry.config().commonTags("execution.mode", mode.tag());
+	}
+	
+	// Requisições em andamento no momento, o que cada modo consegue manter em paralelo. Uma requisição assíncrona
+	// (modo async, respostas reativas) só termina quando o AsyncContext é completado
+	@Bean
+	public OncePerRequestFilter inFlightRequestsFilter(MeterRegistry registry) {
+		AtomicInteger inFlight = new AtomicInteger();
+		Gauge.builder("http.server.requests.inflight", inFlight, AtomicInteger::get)
+			.description("HTTP requests being processed")
+			.register(registry);
+		
+		return new OncePerRequestFilter() {
+			@Override
+			protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+					throws ServletException, IOException {
+				inFlight.incrementAndGet();
+				try {
+					chain.doFilter(request, response);
+				} finally {
+					if(request.isAsyncStarted()) {
+						request.getAsyncContext().addListener(new AsyncListener() {
+							@Override
+							public void onComplete(AsyncEvent event) {
+								inFlight.decrementAndGet();
+							}
+							
+							@Override
+							public void onTimeout(AsyncEvent event) {
+							}
+							
+							@Override
+							public void onError(AsyncEvent event) {
+							}
+							
+							@Override
+							public void onStartAsync(AsyncEvent event) {
+							}
+						});
+					} else {
+						inFlight.decrementAndGet();
+					}
+				}
+			}
+		};
+	}
+	
+	// Modo async (configurado ou no lugar do virtual, sem virtual threads na JVM)
+	@Configuration
+	@Conditional(AsyncModeCondition.class)
+	static class AsyncModeConfig implements WebMvcConfigurer {
+		
+		private final ThreadPoolTaskExecutor requestExecutor;
+		
+		AsyncModeConfig(@Lazy ThreadPoolTaskExecutor requestExecutor) {
+			this.requestExecutor = requestExecutor;
+		}
+		
+		// Executor limitado dos métodos dos controladores: threads (em geral perto do pool de conexões do banco, já que
+		// os métodos bloqueiam no JPA) e fila. Com a fila cheia o método roda na própria thread do Tomcat, que deixa de
+		// aceitar novas requisições (contrapressão), como no envio de emails do ScheduleService. O tempo na fila fica em
+		// http.async.queue.wait e o uso do executor em executor.* (name=http.async)
+		@Bean
+		public ThreadPoolTaskExecutor requestExecutor(MeterRegistry registry,
+				@Value("${application.web.async.threads:32}") int threads,
+				@Value("${application.web.async.queue-capacity:1000}") int queueCapacity) {
+			Timer queueWait = Timer.builder("http.async.queue.wait")
+					.description("Time HTTP requests wait for a thread of the async executor")
+					.register(registry);
+			ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+			executor.setCorePoolSize(threads);
+			executor.setMaxPoolSize(threads);
+			executor.setQueueCapacity(queueCapacity);
+			executor.setThreadNamePrefix("http-async-");
+			executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.setTaskDecorator(task -> {
+				long queued = System.nanoTime();
+				return () -> {
+					queueWait.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+					task.run();
+				};
+			});
+			return executor;
+		}
+		
+		@Bean
+		public MeterBinder requestExecutorMetrics(ThreadPoolTaskExecutor requestExecutor) {
+			return registry -> new ExecutorServiceMetrics(requestExecutor.getThreadPoolExecutor(), "http.async", 
+					Collections.emptyList()).bindTo(registry);
+		}
+		
+		@Bean
+		public WebMvcRegistrations asyncHandlerAdapterRegistrations() {
+			return new WebMvcRegistrations() {
+				@Override
+				public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+					return new AsyncHandlerAdapter();
+				}
+			};
+		}
+		
+		// A medição das etapas da requisição (RequestTimings) continua na thread do executor
+		@Override
+		public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+			configurer.setTaskExecutor(requestExecutor);
+			configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+				@Override
+				public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+					RequestTimings.bind(request.getNativeRequest(ServletRequest.class));
+				}
+				
+				@Override
+				public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+					RequestTimings.stop();
+				}
+			});
+		}
+		
+	}
+	
+	static class AsyncModeCondition implements Condition {
+		
+		@Override
+		public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+			return ExecutionMode.resolve(context.getEnvironment().getProperty(EXECUTION_MODE, "platform")) == ExecutionMode.ASYNC;
+		}
+		
+	}
+
+}
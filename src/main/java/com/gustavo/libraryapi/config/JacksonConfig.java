@@ -0,0 +1,20 @@
+package com.gustavo.libraryapi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+// Os módulos declarados como bean são registrados pelo Spring Boot no ObjectMapper da aplicação
+@Configuration
+public class JacksonConfig {
+	
+	// Blackbird (sucessor do Afterburner para Java 11+): getters, setters e construtores dos DTOs (BookDTO, LoanDTO, 
+	// PageDTO...) são chamados por lambdas geradas na primeira serialização, em vez de reflexão a cada campo
+	@Bean
+	public Module blackbirdModule() {
+		return new BlackbirdModule();
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.gustavo.libraryapi.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+
+// Cache de segundo nível do Hibernate (JCache com o Caffeine, na memória da aplicação): entidade Book por id e
+// consulta BookRepository.findByIsbn. As regiões são criadas aqui com o tamanho e a expiração das propriedades
+// application.jpa.cache.regions.*; uma região não criada faz o Hibernate falhar ao subir, em vez de criar uma
+// região sem limite. Acertos, falhas, inclusões e remoções ficam em /actuator/metrics/cache.* (tag cacheManager=hibernate)
+@Configuration
+public class JpaCacheConfig {
+	
+	public static final String BOOK = "book";
+	public static final String BOOK_BY_ISBN = "bookByIsbn";
+	
+	private static final String PREFIX = "application.jpa.cache.regions.";
+	private static final AtomicInteger MANAGERS = new AtomicInteger();
+	
+	// Um CacheManager por contexto do Spring: o provider reaproveita os CacheManagers pela URI e os testes sobem
+	// vários contextos na mesma JVM
+	@Bean(destroyMethod = "close")
+	public CacheManager jpaCacheManager(Environment environment) {
+		Binder binder = Binder.get(environment);
+		CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+				.getCacheManager(URI.create("hibernate-" + MANAGERS.incrementAndGet()), getClass().getClassLoader());
+		
+		cacheManager.createCache(BOOK, region(binder, "book", 10_000, Duration.ofMinutes(10)));
+		cacheManager.createCache(BOOK_BY_ISBN, region(binder, "book-by-isbn", 10_000, Duration.ofMinutes(10)));
+		cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+				region(binder, "query-results", 1_000, Duration.ofMinutes(10)));
+		// Última alteração de cada tabela, usada para invalidar as consultas em cache: uma entrada por tabela, sem
+		// limite nem expiração (uma entrada removida antes das consultas deixaria resultados antigos válidos)
+		CaffeineConfiguration<Object, Object> timestamps = new CaffeineConfiguration<>();
+		timestamps.setStatisticsEnabled(true);
+		cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, timestamps);
+		return cacheManager;
+	}
+	
+	@Bean
+	public HibernatePropertiesCustomizer jpaCacheCustomizer(CacheManager jpaCacheManager) {
+		return properties -> {
+			properties.put(ConfigSettings.CACHE_MANAGER, jpaCacheManager);
+			properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+		};
+	}
+	
+	@Bean
+	public MeterBinder jpaCacheMetrics(CacheManager jpaCacheManager) {
+		return registry -> {
+			for(String name : jpaCacheManager.getCacheNames()) {
+				JCacheMetrics.monitor(registry, jpaCacheManager.getCache(name), Tags.of("cacheManager", "hibernate"));
+			}
+		};
+	}
+	
+	private static CaffeineConfiguration<Object, Object> region(Binder binder, String property, long maxSize,
+			Duration expireAfterWrite) {
+		CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+		configuration.setMaximumSize(OptionalLong.of(
+				binder.bind(PREFIX + property + ".max-size", Long.class).orElse(maxSize)));
+		configuration.setExpireAfterWrite(OptionalLong.of(
+				binder.bind(PREFIX + property + ".expire-after-write", Duration.class).orElse(expireAfterWrite).toNanos()));
+		configuration.setStatisticsEnabled(true);
+		return configuration;
+	}
+
+}
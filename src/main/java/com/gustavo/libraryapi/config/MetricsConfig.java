@@ -0,0 +1,113 @@
+package com.gustavo.libraryapi.config;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gustavo.libraryapi.api.mapper.BookMapper;
+import com.gustavo.libraryapi.api.mapper.LoanMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Tempos por etapa das requisições. Os tempos por endpoint (http.server.requests) e por consulta dos repositórios
+// (spring.data.repository.invocations) já são medidos pelo Spring Boot, os histogramas ficam no application.properties
+@Configuration
+public class MetricsConfig {
+	
+	@Bean
+	public RequestMetricsFilter requestMetricsFilter(MeterRegistry registry, 
+			@Value("${application.metrics.slo:500ms}") Duration slo) {
+		return new RequestMetricsFilter(registry, slo);
+	}
+	
+	// Repositórios: o tempo de cada chamada entra como tempo de banco da requisição.
+	// Mappers (MapStruct): cada conversão é medida em library.mapping
+	@Bean
+	public static BeanPostProcessor stageTimingsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) {
+				if(bean instanceof RepositoryFactoryBeanSupport) {
+					// Pelo proxy, e não pelo listener de invocações, que não sabe se a chamada está dentro de outra
+					((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory -> 
+						factory.addRepositoryProxyPostProcessor((proxy, repository) -> 
+							proxy.addAdvice((MethodInterceptor) invocation -> {
+								long start = System.nanoTime();
+								RequestTimings.enter(RequestTimings.Stage.DB);
+								try {
+									return invocation.proceed();
+								} finally {
+									RequestTimings.exit(RequestTimings.Stage.DB, System.nanoTime() - start);
+								}
+							})));
+				}
+				return bean;
+			}
+			
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if(!(bean instanceof BookMapper || bean instanceof LoanMapper)) {
+					return bean;
+				}
+				ProxyFactory proxy = new ProxyFactory(bean);
+				proxy.addAdvice((MethodInterceptor) invocation -> {
+					long start = System.nanoTime();
+					RequestTimings.enter(RequestTimings.Stage.MAPPING);
+					try {
+						return invocation.proceed();
+					} finally {
+						long elapsed = System.nanoTime() - start;
+						RequestTimings.exit(RequestTimings.Stage.MAPPING, elapsed);
+						Timer.builder("library.mapping")
+							.description("Time spent mapping entities and DTOs")
+							.tag("mapper", invocation.getMethod().getDeclaringClass().getSimpleName())
+							.tag("method", invocation.getMethod().getName())
+							.register(registry.getObject())
+							.record(elapsed, TimeUnit.NANOSECONDS);
+					}
+				});
+				return proxy.getProxy();
+			}
+		};
+	}
+	
+	// Substitui o conversor JSON padrão do Spring Boot, medindo a serialização de cada resposta em library.serialization.
+	// O Content-Length das respostas pequenas fica no ContentLengthJsonHttpMessageConverter
+	@Bean
+	public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper, 
+			MeterRegistry registry, @Value("${server.compression.min-response-size:2KB}") DataSize minResponseSize) {
+		return new ContentLengthJsonHttpMessageConverter(objectMapper, (int) minResponseSize.toBytes()) {
+			@Override
+			protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+				long start = System.nanoTime();
+				try {
+					super.writeInternal(object, type, outputMessage);
+				} finally {
+					long elapsed = System.nanoTime() - start;
+					RequestTimings.add(RequestTimings.Stage.SERIALIZATION, elapsed);
+					Timer.builder("library.serialization")
+						.description("Time spent writing JSON responses")
+						.tag("type", object.getClass().getSimpleName())
+						.register(registry)
+						.record(elapsed, TimeUnit.NANOSECONDS);
+				}
+			}
+		};
+	}
+
+}
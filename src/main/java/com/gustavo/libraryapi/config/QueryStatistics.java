@@ -0,0 +1,170 @@
+package com.gustavo.libraryapi.config;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.logging.DefaultQueryLogEntryCreator;
+
+// Estatísticas dos comandos SQL executados pelo DataSource: quantidade, tempo total e maior tempo por comando
+// (/actuator/queries), tempo por método de repositório (library.jdbc.statements) e log dos comandos lentos com os
+// parâmetros. Por comando são só alguns contadores, por isso fica ligado também em produção
+@Slf4j
+public class QueryStatistics implements QueryExecutionListener, MeterBinder {
+	
+	// Comandos executados fora de um repositório (ex: carga lazy ou SQL direto)
+	static final String NONE = "none";
+	
+	// Comandos que passaram do limite de comandos distintos
+	static final String OTHER = "other";
+	
+	private static final String START = QueryStatistics.class.getName() + ".start";
+	
+	private final ThreadLocal<String> caller = new ThreadLocal<>();
+	private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+	private final DefaultQueryLogEntryCreator logEntryCreator = new DefaultQueryLogEntryCreator();
+	private final long slowNanos;
+	private final int maxStatements;
+	private volatile MeterRegistry registry;
+	
+	public QueryStatistics(Duration slowThreshold, int maxStatements) {
+		this.slowNanos = slowThreshold.toNanos();
+		this.maxStatements = maxStatements;
+	}
+	
+	// O registry é criado depois do DataSource; até lá só as estatísticas em memória são atualizadas
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+	}
+	
+	// Método de repositório em execução na thread atual (ex: BookRepository.findById), devolve o anterior
+	public String enter(String method) {
+		String previous = caller.get();
+		caller.set(method);
+		return previous;
+	}
+	
+	public void exit(String previous) {
+		if(previous == null) {
+			caller.remove();
+		} else {
+			caller.set(previous);
+		}
+	}
+	
+	@Override
+	public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+		execInfo.addCustomValue(START, System.nanoTime());
+	}
+	
+	@Override
+	public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+		Long start = execInfo.getCustomValue(START, Long.class);
+		long elapsed = start == null ? TimeUnit.MILLISECONDS.toNanos(execInfo.getElapsedTime()) : System.nanoTime() - start;
+		String method = caller.get() == null ? NONE : caller.get();
+		
+		record(sql(queryInfoList), method, elapsed);
+		RequestTimings.statementExecuted();
+		
+		if(elapsed >= slowNanos) {
+			log.warn("slow statement in {} ({} ms): {}", method, TimeUnit.NANOSECONDS.toMillis(elapsed),
+					logEntryCreator.getLogEntry(execInfo, queryInfoList, false, false));
+		}
+	}
+	
+	// Comandos com maior tempo total primeiro
+	public List<Summary> top(int limit) {
+		return statements.entrySet().stream()
+				.map(entry -> entry.getValue().summary(entry.getKey()))
+				.sorted(Comparator.comparingDouble(Summary::getTotalMillis).reversed())
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+	
+	public void reset() {
+		statements.clear();
+	}
+	
+	void record(String sql, String method, long nanos) {
+		Statement statement = statements.get(sql);
+		if(statement == null) {
+			// Limita a memória quando o SQL varia muito (ex: listas no IN com tamanhos diferentes)
+			String key = statements.size() < maxStatements ? sql : OTHER;
+			statement = statements.computeIfAbsent(key, k -> new Statement());
+		}
+		statement.record(method, nanos);
+		
+		MeterRegistry meters = registry;
+		if(meters != null) {
+			int separator = method.indexOf('.');
+			Timer.builder("library.jdbc.statements")
+				.description("Time spent executing SQL statements, by calling repository method")
+				.tag("repository", separator < 0 ? method : method.substring(0, separator))
+				.tag("method", separator < 0 ? NONE : method.substring(separator + 1))
+				.register(meters)
+				.record(nanos, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	// Em lotes (batch) o mesmo comando aparece uma vez por item
+	private static String sql(List<QueryInfo> queryInfoList) {
+		if(queryInfoList.size() == 1) {
+			return queryInfoList.get(0).getQuery();
+		}
+		return queryInfoList.stream().map(QueryInfo::getQuery).distinct().collect(Collectors.joining("; "));
+	}
+	
+	private static class Statement {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final Set<String> methods = ConcurrentHashMap.newKeySet();
+		
+		void record(String method, long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			methods.add(method);
+		}
+		
+		Summary summary(String sql) {
+			long calls = count.sum();
+			long total = totalNanos.sum();
+			return new Summary(sql, calls, millis(total), calls == 0 ? 0 : millis(total / calls), millis(maxNanos.get()),
+					methods.stream().sorted().collect(Collectors.toList()));
+		}
+		
+		private static double millis(long nanos) {
+			return nanos / 1_000_000d;
+		}
+	}
+	
+	@Getter
+	@AllArgsConstructor
+	public static class Summary {
+		private final String sql;
+		private final long calls;
+		private final double totalMillis;
+		private final double meanMillis;
+		private final double maxMillis;
+		private final List<String> methods;
+	}
+	
+}
@@ -0,0 +1,68 @@
+package com.gustavo.libraryapi.config;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+// Estatísticas dos comandos SQL (QueryStatistics): o DataSource é envolvido por um proxy (datasource-proxy) que mede
+// cada comando e os repositórios informam qual método está executando. Os beans são estáticos porque o DataSource é
+// criado antes da maior parte do contexto
+@Configuration
+public class QueryStatisticsConfig {
+	
+	@Bean
+	public static QueryStatistics queryStatistics(Environment environment) {
+		Binder binder = Binder.get(environment);
+		return new QueryStatistics(
+				binder.bind("application.jdbc.slow-statement", Duration.class).orElse(Duration.ofMillis(200)),
+				binder.bind("application.jdbc.statistics.max-statements", Integer.class).orElse(500));
+	}
+	
+	@Bean
+	public static BeanPostProcessor queryStatisticsPostProcessor(QueryStatistics statistics) {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) {
+				if(bean instanceof RepositoryFactoryBeanSupport) {
+					((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory -> 
+						factory.addRepositoryProxyPostProcessor((proxy, repository) -> 
+							proxy.addAdvice((MethodInterceptor) invocation -> {
+								String previous = statistics.enter(repository.getRepositoryInterface().getSimpleName() 
+										+ "." + invocation.getMethod().getName());
+								try {
+									return invocation.proceed();
+								} finally {
+									statistics.exit(previous);
+								}
+							})));
+				}
+				return bean;
+			}
+			
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if(bean instanceof DataSource && !(bean instanceof ProxyDataSource)) {
+					return ProxyDataSourceBuilder.create(beanName, (DataSource) bean).listener(statistics).build();
+				}
+				return bean;
+			}
+		};
+	}
+	
+	@Bean
+	public QueryStatisticsEndpoint queryStatisticsEndpoint(QueryStatistics statistics) {
+		return new QueryStatisticsEndpoint(statistics);
+	}
+
+}
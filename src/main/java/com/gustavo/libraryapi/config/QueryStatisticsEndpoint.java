@@ -0,0 +1,32 @@
+package com.gustavo.libraryapi.config;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+// /actuator/queries: comandos SQL com maior tempo total desde a subida (ou desde o último DELETE)
+@Endpoint(id = "queries")
+public class QueryStatisticsEndpoint {
+	
+	private static final int DEFAULT_LIMIT = 10;
+	
+	private final QueryStatistics statistics;
+	
+	public QueryStatisticsEndpoint(QueryStatistics statistics) {
+		this.statistics = statistics;
+	}
+	
+	@ReadOperation
+	public List<QueryStatistics.Summary> queries(@Nullable Integer limit) {
+		return statistics.top(limit == null ? DEFAULT_LIMIT : limit);
+	}
+	
+	@DeleteOperation
+	public void reset() {
+		statistics.reset();
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.gustavo.libraryapi.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.EmbeddedDatabaseConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+
+// Acesso R2DBC (não bloqueante) ao mesmo banco H2 usado pelo JPA: a URL vem do datasource da aplicação, assim os
+// endpoints reativos leem as mesmas tabelas, inclusive quando o nome do banco em memória é gerado pelo Spring Boot.
+// O pool não é exposto como bean: um ConnectionFactory no contexto desligaria a configuração automática do DataSource.
+// Com outro banco (só há driver R2DBC para o H2) a configuração, os repositórios, serviços e controladores reativos
+// não são criados (H2Database) e a aplicação sobe apenas com os endpoints do JPA
+@Configuration
+@Conditional(R2dbcConfig.H2Database.class)
+public class R2dbcConfig implements DisposableBean {
+	
+	private static final String H2_PREFIX = "jdbc:h2:";
+	
+	private ConnectionPool pool;
+	
+	@Bean
+	public DatabaseClient databaseClient(DataSourceProperties properties, 
+			@Value("${application.r2dbc.pool.max-size:10}") int maxSize) {
+		String url = properties.determineUrl();
+		H2ConnectionFactory h2 = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+				.url(url.substring(H2_PREFIX.length()))
+				.username(properties.determineUsername())
+				.password(properties.determinePassword())
+				.build());
+		
+		pool = new ConnectionPool(ConnectionPoolConfiguration.builder(h2)
+				.initialSize(1)
+				.maxSize(maxSize)
+				.build());
+		return DatabaseClient.create(pool);
+	}
+	
+	@Override
+	public void destroy() {
+		if(pool != null) {
+			pool.dispose();
+		}
+	}
+	
+	// Banco H2 informado em spring.datasource.url ou, sem a URL, o banco em memória criado pelo Spring Boot
+	public static class H2Database extends SpringBootCondition {
+		
+		@Override
+		public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+			String url = context.getEnvironment().getProperty("spring.datasource.url");
+			boolean h2 = url == null ? EmbeddedDatabaseConnection.get(context.getClassLoader()) == EmbeddedDatabaseConnection.H2
+					: url.startsWith(H2_PREFIX);
+			return h2 ? ConditionOutcome.match("H2 database " + url) 
+					: ConditionOutcome.noMatch("Reactive endpoints require an H2 database, found " + url);
+		}
+		
+	}
+
+}
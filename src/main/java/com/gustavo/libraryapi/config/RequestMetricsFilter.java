@@ -0,0 +1,87 @@
+package com.gustavo.libraryapi.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Separa o tempo de cada requisição em banco, mapeamento e serialização (library.request.stage), registra os comandos
+// SQL executados (library.request.statements) e conta as requisições acima do SLO (library.request.slo.breaches), por
+// endpoint. Requisições assíncronas (modo async e respostas reativas) são registradas no fim do async dispatch; nas
+// respostas reativas só as etapas executadas nas threads da requisição são somadas
+public class RequestMetricsFilter extends OncePerRequestFilter {
+	
+	private static final String UNKNOWN = "UNKNOWN";
+	
+	private final MeterRegistry registry;
+	private final long sloNanos;
+	
+	public RequestMetricsFilter(MeterRegistry registry, Duration slo) {
+		this.registry = registry;
+		this.sloNanos = slo.toNanos();
+	}
+	
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+	
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		RequestTimings.bind(request);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			RequestTimings timings = RequestTimings.stop();
+			if(!request.isAsyncStarted()) {
+				record(request, timings.elapsed(), timings);
+			}
+		}
+	}
+	
+	private void record(HttpServletRequest request, long elapsed, RequestTimings timings) {
+		// O padrão da rota (ex: /api/books/{id}) mantém a quantidade de séries limitada, como no http.server.requests
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		String uri = pattern == null ? UNKNOWN : pattern.toString();
+		
+		for(RequestTimings.Stage stage : RequestTimings.Stage.values()) {
+			Timer.builder("library.request.stage")
+				.description("Time spent on each stage of an HTTP request")
+				.tag("stage", stage.tag())
+				.tag("method", request.getMethod())
+				.tag("uri", uri)
+				.register(registry)
+				.record(timings.nanos(stage), TimeUnit.NANOSECONDS);
+		}
+		
+		DistributionSummary.builder("library.request.statements")
+			.description("SQL statements executed by an HTTP request")
+			.tag("method", request.getMethod())
+			.tag("uri", uri)
+			.register(registry)
+			.record(timings.statements());
+		
+		if(elapsed > sloNanos) {
+			Counter.builder("library.request.slo.breaches")
+				.description("HTTP requests slower than the configured SLO")
+				.tag("method", request.getMethod())
+				.tag("uri", uri)
+				.register(registry)
+				.increment();
+		}
+	}
+
+}
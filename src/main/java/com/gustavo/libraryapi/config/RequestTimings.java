@@ -0,0 +1,91 @@
+package com.gustavo.libraryapi.config;
+
+import java.util.Locale;
+
+import javax.servlet.ServletRequest;
+
+// Tempo gasto em cada etapa da requisição atual e comandos SQL executados, somados na thread que atende a requisição.
+// A medição fica guardada na requisição, então continua no async dispatch e na thread do executor do modo async.
+// Fora de uma requisição (ex: tarefas agendadas) nada é somado
+public final class RequestTimings {
+	
+	public enum Stage {
+		DB, MAPPING, SERIALIZATION;
+		
+		public String tag() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+	
+	private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+	private static final String ATTRIBUTE = RequestTimings.class.getName();
+	
+	private final long start = System.nanoTime();
+	private final long[] nanos = new long[Stage.values().length];
+	// Chamadas medidas em andamento por etapa, na thread que atende a requisição
+	private final int[] depth = new int[Stage.values().length];
+	private int statements;
+	
+	private RequestTimings() {
+	}
+	
+	public static void add(Stage stage, long nanos) {
+		RequestTimings timings = CURRENT.get();
+		if(timings != null) {
+			timings.nanos[stage.ordinal()] += nanos;
+		}
+	}
+	
+	// Início e fim de uma chamada medida (repositório, mapper). Só a chamada mais externa de cada etapa é somada: as
+	// aninhadas (um método default do repositório chamando outro, o LoanMapper usando o BookMapper) já estão no tempo dela
+	public static void enter(Stage stage) {
+		RequestTimings timings = CURRENT.get();
+		if(timings != null) {
+			timings.depth[stage.ordinal()]++;
+		}
+	}
+	
+	public static void exit(Stage stage, long nanos) {
+		RequestTimings timings = CURRENT.get();
+		if(timings != null && timings.depth[stage.ordinal()] > 0 && --timings.depth[stage.ordinal()] == 0) {
+			timings.nanos[stage.ordinal()] += nanos;
+		}
+	}
+	
+	public static void statementExecuted() {
+		RequestTimings timings = CURRENT.get();
+		if(timings != null) {
+			timings.statements++;
+		}
+	}
+	
+	// Começa a medição da requisição ou continua a já começada, na thread atual
+	static RequestTimings bind(ServletRequest request) {
+		RequestTimings timings = (RequestTimings) request.getAttribute(ATTRIBUTE);
+		if(timings == null) {
+			timings = new RequestTimings();
+			request.setAttribute(ATTRIBUTE, timings);
+		}
+		CURRENT.set(timings);
+		return timings;
+	}
+	
+	static RequestTimings stop() {
+		RequestTimings timings = CURRENT.get();
+		CURRENT.remove();
+		return timings;
+	}
+	
+	long elapsed() {
+		return System.nanoTime() - start;
+	}
+	
+	long nanos(Stage stage) {
+		return nanos[stage.ordinal()];
+	}
+	
+	int statements() {
+		return statements;
+	}
+	
+}
@@ -0,0 +1,32 @@
+package com.gustavo.libraryapi.config;
+
+import java.util.Locale;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.gustavo.libraryapi.service.CountMode;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+	
+	// Parâmetro count das listagens em minúsculas (ex: count=cached), como na propriedade application.paging.count
+	@Override
+	public void addFormatters(FormatterRegistry registry) {
+		registry.addConverter(String.class, CountMode.class, value -> CountMode.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+	}
+	
+	// CBOR (application/cbor) para os serviços internos: os mesmos DTOs do JSON, em binário, sem o custo de ler texto.
+	// Escolhido pelo Accept e pelo Content-Type; o JSON continua o padrão (o conversor fica depois do JSON na lista).
+	// O ObjectMapper vem do builder do Spring Boot, com os mesmos módulos do JSON (ex: Blackbird)
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
+}
@@ -1,14 +1,26 @@
 package com.gustavo.libraryapi.model.entity;
 
 import java.util.List;
+import java.util.Locale;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.gustavo.libraryapi.config.JpaCacheConfig;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -16,16 +28,33 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table
+@EntityListeners(BookIndexListener.class)
+// Os updates feitos pelo merge (save) gravam apenas as colunas alteradas
+@DynamicUpdate
+// Cache de segundo nível (JpaCacheConfig): livros são muito mais lidos do que alterados. READ_WRITE mantém o cache
+// consistente com os saves, por isso os livros são alterados sempre pela entidade: um update em massa na tabela book
+// esvazia toda a região. A disponibilidade e as estatísticas de empréstimo, alteradas a cada empréstimo e devolução
+// por updates em massa, ficam em BookLoanStatistics
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = JpaCacheConfig.BOOK)
+// Índices usados pela paginação por cursor (ordenação por título e id) e pela busca por isbn, que também garante
+// a unicidade do isbn no banco
+@Table(indexes = {
+		@Index(name = "idx_book_title_id", columnList = "title, id"),
+		@Index(name = Book.ISBN_INDEX, columnList = "isbn", unique = true) })
 public class Book {
 	
+	public static final String ISBN_INDEX = "uk_book_isbn";
+	
 	@Id
 	@Column
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	// Sequence com allocationSize: o Hibernate reserva os ids em blocos e consegue agrupar os inserts em lote,
+	// o que não é possível com IDENTITY
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column
@@ -34,9 +63,21 @@ public class Book {
 	@Column
 	private String author;
 	
-	@Column
+	@Column(nullable = false)
 	private String isbn;
 	
+	// Muda junto com as colunas do livro retornadas pela API (título, autor e isbn): é usada no ETag e no bloqueio
+	// otimista do merge
+	@Version
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	private Long version;
+	
 	@OneToMany(mappedBy="book")
 	private List<Loan> loans;
+	
+	// Forma do isbn gravada no banco e usada nas buscas: sem hífens e espaços e em caixa alta (dígito verificador X)
+	public static String normalizeIsbn(String isbn) {
+		return isbn == null ? null : isbn.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+	}
 }
@@ -0,0 +1,32 @@
+package com.gustavo.libraryapi.model.entity;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.gustavo.libraryapi.model.repository.BookSearchIndex;
+
+// Mantém o índice de busca em dia com toda gravação de livro feita pelo JPA (cadastro, importação, alteração e
+// exclusão). É criado pelo Spring através do Hibernate; sem o índice no contexto (ex: @DataJpaTest) não faz nada
+public class BookIndexListener {
+	
+	private final ObjectProvider<BookSearchIndex> searchIndex;
+	
+	public BookIndexListener(ObjectProvider<BookSearchIndex> searchIndex) {
+		this.searchIndex = searchIndex;
+	}
+	
+	@PostPersist
+	@PostUpdate
+	public void index(Book book) {
+		searchIndex.ifAvailable(index -> index.indexAfterCommit(book));
+	}
+	
+	@PostRemove
+	public void delete(Book book) {
+		searchIndex.ifAvailable(index -> index.deleteAfterCommit(book.getId()));
+	}
+
+}
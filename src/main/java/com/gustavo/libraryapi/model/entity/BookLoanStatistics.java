@@ -0,0 +1,62 @@
+package com.gustavo.libraryapi.model.entity;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.springframework.data.domain.Persistable;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Disponibilidade e estatísticas de empréstimo de um livro, atualizadas a cada empréstimo e devolução pelos updates do
+// BookLoanStatisticsRepository, para não somar o histórico de empréstimos a cada leitura. Ficam fora da entidade Book,
+// que está no cache de segundo nível: um update em massa na tabela book esvazia toda a região dos livros e as consultas
+// por isbn em cache. A chave é o id do livro e a linha é criada no primeiro empréstimo. Não há chave estrangeira: os
+// empréstimos já impedem que um livro emprestado alguma vez seja removido
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "book_loan_statistics")
+public class BookLoanStatistics implements Persistable<Long> {
+	
+	@Id
+	@Column(name = "id_book")
+	private Long id;
+	
+	// Indica se o livro tem um empréstimo em aberto
+	@Column(nullable = false)
+	@Builder.Default
+	private Boolean loaned = false;
+	
+	@Column(name = "total_loans", nullable = false)
+	@Builder.Default
+	private Long totalLoans = 0L;
+	
+	@Column(name = "last_loan_date")
+	private LocalDate lastLoanDate;
+	
+	// Empréstimos devolvidos e a soma dos dias que ficaram em aberto, para a média de duração
+	@Column(name = "returned_loans", nullable = false)
+	@Builder.Default
+	private Long returnedLoans = 0L;
+	
+	@Column(name = "total_loan_days", nullable = false)
+	@Builder.Default
+	private Long totalLoanDays = 0L;
+	
+	// A linha só é gravada pelo insert do primeiro empréstimo, as demais alterações são updates do repositório. Assim o
+	// save do Spring Data faz o persist direto, sem o select do merge de uma chave já preenchida
+	@Override
+	public boolean isNew() {
+		return true;
+	}
+
+}
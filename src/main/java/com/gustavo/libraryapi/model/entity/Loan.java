@@ -7,8 +7,16 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -20,6 +28,14 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+// Os updates feitos pelo merge (save) gravam apenas as colunas alteradas
+@DynamicUpdate
+// Índices usados pela paginação por cursor (ordenação por data do empréstimo e id), pela devolução pelo isbn dos
+// livros (livro e devolvido) e pela busca de empréstimos atrasados (devolvido e data do empréstimo)
+@Table(indexes = {
+		@Index(name = "idx_loan_loan_date_id", columnList = "loan_date, id"),
+		@Index(name = "idx_loan_book_returned", columnList = "id_book, returned"),
+		@Index(name = "idx_loan_returned_loan_date", columnList = "returned, loan_date") })
 public class Loan {
 	
 	@Id
@@ -37,10 +53,30 @@ public class Loan {
 	@ManyToOne
 	private Book book;
 	
-	@Column
+	@Column(name = "loan_date")
 	private LocalDate loanDate;
 	
-	@Column
-	private Boolean returned;
+	// Nunca nulo: um empréstimo em aberto tem returned = false, o que permite usar os índices sem "is null or"
+	@Column(nullable = false)
+	@Builder.Default
+	private Boolean returned = false;
+	
+	// Data gravada na devolução e limpa ao reabrir, para tirar das estatísticas do livro os mesmos dias contados
+	@Column(name = "return_date")
+	private LocalDate returnDate;
+	
+	// Usada no ETag e no bloqueio otimista do merge; o markReturned do LoanRepository também incrementa a versão
+	@Version
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	private Long version;
+	
+	@PrePersist
+	@PreUpdate
+	private void defaultReturned() {
+		if(returned == null) {
+			returned = false;
+		}
+	}
 	
 }
@@ -0,0 +1,69 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.gustavo.libraryapi.model.entity.BookLoanStatistics;
+
+// Updates condicionais da disponibilidade e das estatísticas de empréstimo dos livros. A tabela não está no cache de
+// segundo nível, então estes updates não invalidam os livros nem as consultas por isbn em cache
+public interface BookLoanStatisticsRepository extends JpaRepository<BookLoanStatistics, Long> {
+	
+	// Marca o livro como emprestado somente se ele estiver disponível e conta o novo empréstimo. Retorna 0 quando o
+	// livro já está emprestado ou ainda não tem estatísticas. O update é atômico no banco, então dois empréstimos
+	// simultâneos do mesmo livro não passam juntos
+	@Transactional
+	@Modifying
+	@Query("update BookLoanStatistics s set s.loaned = true, s.totalLoans = s.totalLoans + 1, "
+			+ "s.lastLoanDate = case when s.lastLoanDate is null or s.lastLoanDate < :loanDate then :loanDate "
+			+ "else s.lastLoanDate end where s.id = :id and s.loaned = false")
+	int markLoaned(@Param("id") Long id, @Param("loanDate") LocalDate loanDate);
+	
+	// Como o markLoaned, mas cria as estatísticas no primeiro empréstimo do livro. Retorna 0 quando o livro já está
+	// emprestado; dois primeiros empréstimos simultâneos também não passam juntos, o segundo insert viola a chave
+	@Transactional
+	default int registerLoan(Long id, LocalDate loanDate) {
+		if(markLoaned(id, loanDate) == 1) {
+			return 1;
+		}
+		if(existsById(id)) {
+			return 0;
+		}
+		try {
+			saveAndFlush(BookLoanStatistics.builder().id(id).loaned(true).totalLoans(1L).lastLoanDate(loanDate).build());
+			return 1;
+		} catch (DataIntegrityViolationException e) {
+			return 0;
+		}
+	}
+	
+	// A devolução só entra nas estatísticas se o livro estava emprestado, então devolver de novo não conta duas vezes
+	@Transactional
+	@Modifying
+	@Query("update BookLoanStatistics s set s.loaned = false, s.returnedLoans = s.returnedLoans + 1, "
+			+ "s.totalLoanDays = s.totalLoanDays + :loanDays where s.id = :id and s.loaned = true")
+	int markReturned(@Param("id") Long id, @Param("loanDays") long loanDays);
+	
+	// Devolução em lote: um update para todos os livros cujos empréstimos tiveram a mesma duração
+	@Transactional
+	@Modifying
+	@Query("update BookLoanStatistics s set s.loaned = false, s.returnedLoans = s.returnedLoans + 1, "
+			+ "s.totalLoanDays = s.totalLoanDays + :loanDays where s.id in :ids and s.loaned = true")
+	int markAllReturned(@Param("ids") Collection<Long> ids, @Param("loanDays") long loanDays);
+	
+	// Reabertura de um empréstimo devolvido: o livro volta a ficar emprestado (se ainda estiver disponível, como no
+	// markLoaned) e a devolução sai das estatísticas, com os dias que foram somados nela
+	@Transactional
+	@Modifying
+	@Query("update BookLoanStatistics s set s.loaned = true, s.returnedLoans = s.returnedLoans - 1, "
+			+ "s.totalLoanDays = s.totalLoanDays - :loanDays where s.id = :id and s.loaned = false")
+	int reopenLoan(@Param("id") Long id, @Param("loanDays") long loanDays);
+
+}
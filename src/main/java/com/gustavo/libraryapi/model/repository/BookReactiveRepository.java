@@ -0,0 +1,73 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.annotation.Conditional;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+
+import com.gustavo.libraryapi.config.R2dbcConfig;
+import com.gustavo.libraryapi.model.entity.Book;
+
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Consultas de leitura de livros pelo driver R2DBC. Os livros retornados não são gerenciados pelo JPA
+@Repository
+@Conditional(R2dbcConfig.H2Database.class)
+@RequiredArgsConstructor
+public class BookReactiveRepository {
+	
+	private final DatabaseClient client;
+	
+	// Mesmo filtro da busca por exemplo do BookService: contém, ignorando maiúsculas, apenas nos campos informados
+	public Flux<Book> find(String title, String author, String isbn) {
+		Map<String, String> filters = new LinkedHashMap<>();
+		filters.put("title", title);
+		filters.put("author", author);
+		filters.put("isbn", isbn);
+		
+		List<String> conditions = new ArrayList<>();
+		filters.forEach((column, value) -> {
+			if(value != null) {
+				conditions.add("lower(b." + column + ") like lower(concat('%', :" + column + ", '%'))");
+			}
+		});
+		
+		String sql = "select b.id, b.title, b.author, b.isbn from book b"
+				+ (conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions))
+				+ " order by b.id";
+		
+		GenericExecuteSpec spec = client.sql(sql);
+		for(Map.Entry<String, String> filter : filters.entrySet()) {
+			if(filter.getValue() != null) {
+				spec = spec.bind(filter.getKey(), filter.getValue());
+			}
+		}
+		return spec.map((row, metadata) -> toBook(row)).all();
+	}
+	
+	public Mono<Boolean> existsById(Long id) {
+		return client.sql("select 1 from book b where b.id = :id")
+				.bind("id", id)
+				.map((row, metadata) -> true)
+				.first()
+				.defaultIfEmpty(false);
+	}
+	
+	static Book toBook(Row row) {
+		return Book.builder()
+				.id(row.get("id", Long.class))
+				.title(row.get("title", String.class))
+				.author(row.get("author", String.class))
+				.isbn(row.get("isbn", String.class))
+				.build();
+	}
+
+}
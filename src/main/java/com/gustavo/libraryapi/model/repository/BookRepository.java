@@ -1,15 +1,62 @@
 package com.gustavo.libraryapi.model.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.config.JpaCacheConfig;
 import com.gustavo.libraryapi.model.entity.Book;
 
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
+	
+	String FILTER = "(:title is null or lower(b.title) like lower(concat('%', :title, '%'))) "
+			+ "and (:author is null or lower(b.author) like lower(concat('%', :author, '%'))) "
+			+ "and (:isbn is null or lower(b.isbn) like lower(concat('%', :isbn, '%')))";
 
 	boolean existsByIsbn(String isbn);
 
+	// Cache de consultas do Hibernate (JpaCacheConfig): guarda o id do livro encontrado e o livro vem da região da
+	// entidade. Qualquer alteração na tabela book invalida as consultas em cache
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+		@QueryHint(name = "org.hibernate.cacheRegion", value = JpaCacheConfig.BOOK_BY_ISBN) })
 	Optional<Book> findByIsbn(String isbn);
+	
+	// Paginação por chave (keyset): ordena por título e id e busca a partir do último registro, sem OFFSET e sem count
+	@Query("select b from Book b where " + FILTER + " order by b.title, b.id")
+	List<Book> findFirstPage(@Param("title") String title, @Param("author") String author, 
+			@Param("isbn") String isbn, Pageable pageable);
+	
+	@Query("select b from Book b where " + FILTER 
+			+ " and (b.title > :lastTitle or (b.title = :lastTitle and b.id > :lastId)) order by b.title, b.id")
+	List<Book> findPageAfter(@Param("title") String title, @Param("author") String author, @Param("isbn") String isbn,
+			@Param("lastTitle") String lastTitle, @Param("lastId") Long lastId, Pageable pageable);
+	
+	// Leitura do catálogo inteiro em blocos por id (reconstrução do índice de busca)
+	List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+	
+	// Verificação de isbn em conjunto (um select por bloco da importação em vez de um por livro)
+	@Query("select b.isbn from Book b where b.isbn in :isbns")
+	Set<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+	
+	// Quantidade de livros pelas estatísticas do H2, sem percorrer a tabela. Pode diferir do count(*)
+	@Query(value = "select row_count_estimate from information_schema.tables where table_name = 'BOOK'", nativeQuery = true)
+	long estimateCount();
+	
+	// Estatísticas de empréstimo do livro, zeradas enquanto ele não tem empréstimos. Vazio quando o livro não existe
+	@Query("select new com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO(coalesce(s.totalLoans, 0), "
+			+ "coalesce(s.loaned, false), s.lastLoanDate, coalesce(s.returnedLoans, 0), coalesce(s.totalLoanDays, 0)) "
+			+ "from Book b left join BookLoanStatistics s on s.id = b.id where b.id = :id")
+	Optional<BookLoanStatisticsDTO> findLoanStatisticsById(@Param("id") Long id);
 
 }
@@ -0,0 +1,23 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
+import com.gustavo.libraryapi.model.entity.Book;
+
+public interface BookRepositoryCustom {
+	
+	// Insere os livros em lote e os desanexa do contexto de persistência para a memória não crescer durante uma importação
+	List<Book> insertAll(List<Book> books);
+	
+	// Quantidade, soma dos ids e soma dos hashes de (id, versão) dos livros encontrados pelo findAll com o mesmo exemplo
+	ResultVersionDTO findVersion(Example<Book> example);
+	
+	// Como o findAll(example, pageable), mas sem o count: busca um livro a mais só para saber se existe próxima página
+	Slice<Book> findSlice(Example<Book> example, Pageable pageable);
+
+}
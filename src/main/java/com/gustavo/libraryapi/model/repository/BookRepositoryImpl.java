@@ -0,0 +1,81 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
+import com.gustavo.libraryapi.model.entity.Book;
+
+// Implementação do fragmento BookRepositoryCustom, encontrada pelo Spring Data pelo sufixo Impl
+public class BookRepositoryImpl implements BookRepositoryCustom {
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	@Transactional
+	public List<Book> insertAll(List<Book> books) {
+		// Com o id por sequence (allocationSize) e hibernate.jdbc.batch_size os inserts são enviados em lote no flush
+		books.forEach(entityManager::persist);
+		entityManager.flush();
+		books.forEach(entityManager::detach);
+		return books;
+	}
+	
+	@Override
+	public ResultVersionDTO findVersion(Example<Book> example) {
+		// Mesmo filtro que o Spring Data monta para o findAll(example), mas só com as funções de agregação no select
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<ResultVersionDTO> query = builder.createQuery(ResultVersionDTO.class);
+		Root<Book> book = query.from(Book.class);
+		// Hash do par (id, versão) de cada livro, como descrito em ResultVersionDTO. O cast dá ao Hibernate o tipo do
+		// resultado da função, que ele não conhece
+		Expression<Long> hash = builder.function("ora_hash", Number.class, builder.sum(builder.prod(book.<Long>get("id"), 
+				ResultVersionDTO.ID_SHIFT), book.<Long>get("version"))).as(Long.class);
+		query.select(builder.construct(ResultVersionDTO.class, builder.count(book), builder.sum(book.<Long>get("id")), 
+				builder.sum(hash)));
+		
+		Predicate predicate = QueryByExamplePredicateBuilder.getPredicate(book, builder, example, EscapeCharacter.DEFAULT);
+		if(predicate != null) {
+			query.where(predicate);
+		}
+		return entityManager.createQuery(query).getSingleResult();
+	}
+	
+	@Override
+	public Slice<Book> findSlice(Example<Book> example, Pageable pageable) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = builder.createQuery(Book.class);
+		Root<Book> book = query.from(Book.class);
+		
+		Predicate predicate = QueryByExamplePredicateBuilder.getPredicate(book, builder, example, EscapeCharacter.DEFAULT);
+		if(predicate != null) {
+			query.where(predicate);
+		}
+		query.orderBy(QueryUtils.toOrders(pageable.getSort(), book, builder));
+		
+		List<Book> books = entityManager.createQuery(query)
+				.setFirstResult((int) pageable.getOffset())
+				.setMaxResults(pageable.getPageSize() + 1)
+				.getResultList();
+		boolean hasNext = books.size() > pageable.getPageSize();
+		return new SliceImpl<>(hasNext ? books.subList(0, pageable.getPageSize()) : books, pageable, hasNext);
+	}
+
+}
@@ -0,0 +1,251 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.gustavo.libraryapi.model.entity.Book;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Índice de texto (Lucene) do título e do autor dos livros. A busca retorna apenas os ids, em ordem de relevância;
+// os livros continuam sendo lidos do banco. Sem diretório configurado o índice fica em memória, como o banco H2
+@Repository
+@Slf4j
+public class BookSearchIndex {
+	
+	private static final String ID = "id";
+	private static final String TITLE = "title";
+	private static final String AUTHOR = "author";
+	
+	// Termo completo vale mais que prefixo e título vale mais que autor
+	private static final float TITLE_BOOST = 2f;
+	private static final float EXACT_BOOST = 2f;
+	
+	private final Analyzer analyzer = new BookAnalyzer();
+	private final Directory directory;
+	private final IndexWriter writer;
+	private final SearcherManager searcherManager;
+	
+	public BookSearchIndex(@Value("${application.books.search.directory:}") String path) throws IOException {
+		this.directory = path.isEmpty() ? new ByteBuffersDirectory() : FSDirectory.open(Paths.get(path));
+		this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+		this.searcherManager = new SearcherManager(writer, null);
+	}
+	
+	// Com uma transação ativa a alteração só entra no índice depois do commit, junto com as demais da mesma
+	// transação. Se a transação for desfeita, o índice não muda
+	public void indexAfterCommit(Book book) {
+		Document document = toDocument(book);
+		Term id = idTerm(book.getId());
+		schedule(writer -> writer.updateDocument(id, document));
+	}
+	
+	public void deleteAfterCommit(Long id) {
+		Term term = idTerm(id);
+		schedule(writer -> writer.deleteDocuments(term));
+	}
+	
+	// Recria o índice a partir dos livros informados, para os dados gravados sem passar pelo JPA (ex: SQL direto)
+	public long rebuild(Iterable<Book> books) {
+		try {
+			writer.deleteAll();
+			long count = 0;
+			for(Book book : books) {
+				writer.addDocument(toDocument(book));
+				count++;
+			}
+			writer.commit();
+			searcherManager.maybeRefreshBlocking();
+			return count;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// Cada palavra precisa aparecer no título ou no autor, completa ou como prefixo (ex: "aven" encontra "Aventuras")
+	public Page<Long> search(String text, Pageable pageable) {
+		List<String> terms = analyze(text);
+		if(terms.isEmpty()) {
+			return Page.empty(pageable);
+		}
+		
+		BooleanQuery.Builder query = new BooleanQuery.Builder();
+		for(String term : terms) {
+			query.add(termQuery(term), BooleanClause.Occur.MUST);
+		}
+		
+		try {
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				int end = (int) Math.min(pageable.getOffset() + pageable.getPageSize(), Integer.MAX_VALUE);
+				Sort sort = new Sort(SortField.FIELD_SCORE, new SortField(ID, SortField.Type.LONG));
+				TopDocs top = searcher.search(query.build(), Math.max(end, 1), sort);
+				
+				List<Long> ids = new ArrayList<>();
+				for(int i = (int) pageable.getOffset(); i < top.scoreDocs.length; i++) {
+					ScoreDoc hit = top.scoreDocs[i];
+					ids.add(searcher.doc(hit.doc).getField(ID).numericValue().longValue());
+				}
+				
+				// Acima de 1000 resultados o Lucene não conta todos durante a busca
+				long total = top.totalHits.relation == TotalHits.Relation.EQUAL_TO
+						? top.totalHits.value : searcher.count(query.build());
+				return new PageImpl<>(ids, pageable, total);
+			} finally {
+				searcherManager.release(searcher);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@PreDestroy
+	public void close() throws IOException {
+		searcherManager.close();
+		writer.close();
+		directory.close();
+	}
+	
+	private Query termQuery(String term) {
+		BooleanQuery.Builder query = new BooleanQuery.Builder();
+		query.add(new BoostQuery(new TermQuery(new Term(TITLE, term)), TITLE_BOOST * EXACT_BOOST), BooleanClause.Occur.SHOULD);
+		query.add(new BoostQuery(new PrefixQuery(new Term(TITLE, term)), TITLE_BOOST), BooleanClause.Occur.SHOULD);
+		query.add(new BoostQuery(new TermQuery(new Term(AUTHOR, term)), EXACT_BOOST), BooleanClause.Occur.SHOULD);
+		query.add(new PrefixQuery(new Term(AUTHOR, term)), BooleanClause.Occur.SHOULD);
+		return query.build();
+	}
+	
+	private List<String> analyze(String text) {
+		if(text == null) {
+			return Collections.emptyList();
+		}
+		List<String> terms = new ArrayList<>();
+		try(TokenStream stream = analyzer.tokenStream(TITLE, text)) {
+			CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+			stream.reset();
+			while(stream.incrementToken()) {
+				terms.add(term.toString());
+			}
+			stream.end();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return terms;
+	}
+	
+	private Document toDocument(Book book) {
+		Document document = new Document();
+		document.add(new StringField(ID, String.valueOf(book.getId()), Field.Store.NO));
+		document.add(new StoredField(ID, book.getId()));
+		document.add(new NumericDocValuesField(ID, book.getId()));
+		if(book.getTitle() != null) {
+			document.add(new TextField(TITLE, book.getTitle(), Field.Store.NO));
+		}
+		if(book.getAuthor() != null) {
+			document.add(new TextField(AUTHOR, book.getAuthor(), Field.Store.NO));
+		}
+		return document;
+	}
+	
+	private Term idTerm(Long id) {
+		return new Term(ID, String.valueOf(id));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void schedule(IndexOperation operation) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(Collections.singletonList(operation));
+			return;
+		}
+		
+		List<IndexOperation> pending = (List<IndexOperation>) TransactionSynchronizationManager.getResource(this);
+		if(pending == null) {
+			List<IndexOperation> operations = new ArrayList<>();
+			TransactionSynchronizationManager.bindResource(this, operations);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(BookSearchIndex.this);
+					if(status == STATUS_COMMITTED) {
+						apply(operations);
+					}
+				}
+			});
+			pending = operations;
+		}
+		pending.add(operation);
+	}
+	
+	// Uma única atualização do leitor por transação
+	private void apply(List<IndexOperation> operations) {
+		try {
+			for(IndexOperation operation : operations) {
+				operation.apply(writer);
+			}
+			searcherManager.maybeRefreshBlocking();
+		} catch (IOException e) {
+			log.error("error updating the book search index, {} changes lost", operations.size(), e);
+		}
+	}
+	
+	private interface IndexOperation {
+		void apply(IndexWriter writer) throws IOException;
+	}
+	
+	// Separa as palavras, ignora maiúsculas e acentos ("Aventuras" e "aventúras" viram "aventuras")
+	private static class BookAnalyzer extends Analyzer {
+		@Override
+		protected TokenStreamComponents createComponents(String fieldName) {
+			Tokenizer tokenizer = new StandardTokenizer();
+			TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+			return new TokenStreamComponents(tokenizer, stream);
+		}
+	}
+
+}
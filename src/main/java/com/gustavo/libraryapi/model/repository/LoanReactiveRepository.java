@@ -0,0 +1,61 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.time.LocalDate;
+
+import org.springframework.context.annotation.Conditional;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+
+import com.gustavo.libraryapi.config.R2dbcConfig;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+
+// Consultas de leitura de empréstimos pelo driver R2DBC, já com o livro (join) em cada linha
+@Repository
+@Conditional(R2dbcConfig.H2Database.class)
+@RequiredArgsConstructor
+public class LoanReactiveRepository {
+	
+	private static final String SELECT = "select l.id, l.customer, l.customer_email, l.loan_date, l.returned, "
+			+ "b.id, b.title, b.author, b.isbn from loan l join book b on b.id = l.id_book ";
+	
+	private final DatabaseClient client;
+	
+	// Mesma regra do LoanRepository.findByBookIsbnOrCustomer: isbn ou cliente, mais recentes primeiro
+	public Flux<Loan> findByBookIsbnOrCustomer(String isbn, String customer) {
+		return client.sql(SELECT + "where b.isbn = :isbn or l.customer = :customer order by l.loan_date desc, l.id desc")
+				.bind("isbn", isbn == null ? "" : isbn)
+				.bind("customer", customer == null ? "" : customer)
+				.map((row, metadata) -> toLoan(row))
+				.all();
+	}
+	
+	public Flux<Loan> findByBook(Long bookId) {
+		return client.sql(SELECT + "where l.id_book = :book order by l.loan_date desc, l.id desc")
+				.bind("book", bookId)
+				.map((row, metadata) -> toLoan(row))
+				.all();
+	}
+	
+	// As colunas são lidas por posição porque loan e book têm colunas com o mesmo nome (id)
+	private static Loan toLoan(Row row) {
+		return Loan.builder()
+				.id(row.get(0, Long.class))
+				.customer(row.get(1, String.class))
+				.customerEmail(row.get(2, String.class))
+				.loanDate(row.get(3, LocalDate.class))
+				.returned(row.get(4, Boolean.class))
+				.book(Book.builder()
+						.id(row.get(5, Long.class))
+						.title(row.get(6, String.class))
+						.author(row.get(7, String.class))
+						.isbn(row.get(8, String.class))
+						.build())
+				.build();
+	}
+
+}
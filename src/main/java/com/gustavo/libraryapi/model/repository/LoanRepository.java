@@ -1,29 +1,105 @@
 package com.gustavo.libraryapi.model.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
 
 public interface LoanRepository extends JpaRepository<Loan, Long>{
 
-	@Query(value = "select case when (count(l.id) > 0) then true else false end "
-			+ "from Loan l where l.book = :book and (l.returned is null or l.returned is false)")
-	boolean existsByBookAndNotReturned(@Param("book") Book book);
-	
-	@Query(value = "select l from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer")
+	// O livro é carregado na mesma consulta (join fetch), evitando um select extra por empréstimo (N+1)
+	@Query(value = "select l from Loan as l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer",
+			countQuery = "select count(l) from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer")
 	Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+	
+	// Página sem o count: o Spring Data busca um empréstimo a mais só para saber se existe próxima página
+	@Query("select l from Loan as l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer")
+	Slice<Loan> findSliceByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+	
+	// Versão do resultado do findByBookIsbnOrCustomer (ETag), com a versão dos livros porque eles fazem parte da resposta
+	@Query("select new com.gustavo.libraryapi.api.dto.ResultVersionDTO(count(l), sum(l.id), "
+			+ "sum(cast(function('ora_hash', l.id * " + ResultVersionDTO.ID_SHIFT + " + l.version + b.version) as long))) "
+			+ "from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer")
+	ResultVersionDTO findVersionByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer);
 
+	@EntityGraph(attributePaths = "book")
 	Page<Loan> findByBook(Book book, Pageable pageable);
 	
-	@Query("select l from Loan l where l.loanDate <= :threeDaysAgo and (l.returned is null or l.returned is false)")
-	List<Loan> findByLoanDateLessThanAndNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
+	// Paginação por chave (keyset): empréstimos mais recentes primeiro, buscando a partir do último registro lido
+	@Query("select l from Loan as l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer "
+			+ "order by l.loanDate desc, l.id desc")
+	List<Loan> findFirstPageByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+	
+	@Query("select l from Loan as l join fetch l.book as b where (b.isbn = :isbn or l.customer = :customer) "
+			+ "and (l.loanDate < :lastLoanDate or (l.loanDate = :lastLoanDate and l.id < :lastId)) "
+			+ "order by l.loanDate desc, l.id desc")
+	List<Loan> findPageByBookIsbnOrCustomerAfter(@Param("isbn") String isbn, @Param("customer") String customer, 
+			@Param("lastLoanDate") LocalDate lastLoanDate, @Param("lastId") Long lastId, Pageable pageable);
+	
+	// Paginação por chave (keyset): cada bloco começa depois do último email lido, sem OFFSET e sem repetir destinatários
+	@Query("select distinct l.customerEmail from Loan l where l.loanDate <= :threeDaysAgo "
+			+ "and l.returned = false and l.customerEmail > :after order by l.customerEmail")
+	List<String> findLateLoanEmailsAfter(@Param("threeDaysAgo") LocalDate threeDaysAgo, @Param("after") String after, Pageable pageable);
+
+	// Exportação: cursor somente de avanço lido em blocos (fetch size), com as linhas montadas direto no DTO para que
+	// nada fique no contexto do JPA. Filtros nulos são ignorados. Deve ser consumida dentro de uma transação
+	@QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+	@Query("select new com.gustavo.libraryapi.api.dto.LoanExportDTO(l.id, b.isbn, l.customer, l.customerEmail, l.loanDate, l.returned) "
+			+ "from Loan l join l.book b where (:isbn is null or b.isbn = :isbn) and (:customer is null or l.customer = :customer) "
+			+ "and (:from is null or l.loanDate >= :from) and (:to is null or l.loanDate <= :to) order by l.loanDate, l.id")
+	Stream<LoanExportDTO> streamForExport(@Param("isbn") String isbn, @Param("customer") String customer, 
+			@Param("from") LocalDate from, @Param("to") LocalDate to);
+	
+	// Devolução em lote: os empréstimos em aberto são lidos só com as colunas necessárias, sem carregar entidades
+	@Query("select l.id as id, b.id as bookId, b.isbn as isbn, l.loanDate as loanDate from Loan l join l.book b "
+			+ "where l.id in :ids and l.returned = false")
+	List<OpenLoan> findOpenByIdIn(@Param("ids") Collection<Long> ids);
+	
+	@Query("select l.id as id, b.id as bookId, b.isbn as isbn, l.loanDate as loanDate from Loan l join l.book b "
+			+ "where b.isbn in :isbns and l.returned = false")
+	List<OpenLoan> findOpenByBookIsbnIn(@Param("isbns") Collection<String> isbns);
+	
+	@Query("select l.id from Loan l where l.id in :ids")
+	Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+	
+	// Situação gravada do empréstimo, sem carregá-lo no contexto
+	@Query("select l.returned from Loan l where l.id = :id")
+	Optional<Boolean> findReturnedById(@Param("id") Long id);
+	
+	// Um único update para todos os empréstimos; os já devolvidos não são alterados
+	@Transactional
+	@Modifying
+	@Query("update Loan l set l.returned = true, l.returnDate = :returnDate, l.version = l.version + 1 "
+			+ "where l.id in :ids and l.returned = false")
+	int markReturned(@Param("ids") Collection<Long> ids, @Param("returnDate") LocalDate returnDate);
+	
+	interface OpenLoan {
+		Long getId();
+		Long getBookId();
+		String getIsbn();
+		LocalDate getLoanDate();
+	}
 
 }
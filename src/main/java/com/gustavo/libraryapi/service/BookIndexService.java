@@ -0,0 +1,24 @@
+package com.gustavo.libraryapi.service;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookIndexService {
+	
+	private final BookService bookService;
+	
+	// Ao subir a aplicação, os livros que já estão no banco entram no índice de busca
+	@EventListener(ApplicationReadyEvent.class)
+	public void reindexOnStartup() {
+		long count = bookService.reindex();
+		log.info("book search index rebuilt with {} books", count);
+	}
+
+}
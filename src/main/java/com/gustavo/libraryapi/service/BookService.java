@@ -1,10 +1,14 @@
 package com.gustavo.libraryapi.service;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.model.entity.Book;
 
 public interface BookService {
@@ -15,9 +19,30 @@ public interface BookService {
 
 	void delete(Book book);
 
+	// Grava apenas o título e o autor do livro informado, pelo id. O isbn e as colunas de empréstimo não mudam
 	Book update(Book book);
 
 	Page<Book> find(Book filter, Pageable pageRequest);
+	
+	// Versão dos livros encontrados pelo find com o mesmo filtro, em uma consulta de agregação (sem ler os livros),
+	// obtida conforme a estratégia de contagem. Vazio com CountMode.NONE
+	Optional<ResultVersionDTO> findVersion(Book filter, CountMode count);
+	
+	// Página sem o count: o total vem da versão. Sem a versão retorna um Slice
+	Slice<Book> find(Book filter, Pageable pageRequest, ResultVersionDTO version);
 
 	Optional<Book> getBookByIsbn(String isbn);
+
+	List<Book> findAfter(Book filter, Book last, int limit);
+
+	List<Book> importBooks(List<Book> books);
+	
+	// Busca de texto no título e no autor, em ordem de relevância
+	Page<Book> search(String text, Pageable pageRequest);
+	
+	// Reconstrói o índice de busca a partir do banco, retornando a quantidade de livros indexados
+	long reindex();
+	
+	// Total de empréstimos, empréstimo em aberto, último empréstimo e duração média, sem ler o histórico
+	Optional<BookLoanStatisticsDTO> getLoanStatistics(Long id);
 }
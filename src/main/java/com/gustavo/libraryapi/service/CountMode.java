@@ -0,0 +1,23 @@
+package com.gustavo.libraryapi.service;
+
+import java.util.Locale;
+
+// Como as buscas paginadas obtêm o total de registros. Escolhida por requisição (parâmetro count) ou pela propriedade
+// application.paging.count
+public enum CountMode {
+	
+	// Conta a cada requisição
+	EXACT,
+	// Reutiliza a contagem do mesmo filtro por alguns segundos (application.paging.count-cache.ttl). Sem ETag, porque
+	// a versão em cache pode estar defasada
+	CACHED,
+	// Usa a estimativa de linhas das estatísticas do banco quando a busca não tem filtro; com filtro usa CACHED
+	ESTIMATED,
+	// Não conta: a resposta é um Slice, só com a indicação de próxima página
+	NONE;
+	
+	public String tag() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+	
+}
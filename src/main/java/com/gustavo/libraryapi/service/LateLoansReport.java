@@ -0,0 +1,72 @@
+package com.gustavo.libraryapi.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Resumo de uma execução do envio de emails de empréstimos atrasados
+public class LateLoansReport {
+
+	private final long startedAt = System.nanoTime();
+	private final AtomicLong chunks = new AtomicLong();
+	private final AtomicLong recipients = new AtomicLong();
+	private final AtomicLong sentBatches = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
+	private final AtomicLong notifiedRecipients = new AtomicLong();
+	private volatile long finishedAt;
+
+	void chunkRead(int size) {
+		chunks.incrementAndGet();
+		recipients.addAndGet(size);
+	}
+
+	void batchSent(int size) {
+		sentBatches.incrementAndGet();
+		notifiedRecipients.addAndGet(size);
+	}
+
+	void batchFailed() {
+		failedBatches.incrementAndGet();
+	}
+
+	void finish() {
+		finishedAt = System.nanoTime();
+	}
+
+	public long getChunks() {
+		return chunks.get();
+	}
+
+	public long getRecipients() {
+		return recipients.get();
+	}
+
+	public long getSentBatches() {
+		return sentBatches.get();
+	}
+
+	public long getFailedBatches() {
+		return failedBatches.get();
+	}
+
+	public long getNotifiedRecipients() {
+		return notifiedRecipients.get();
+	}
+
+	public long getElapsedMillis() {
+		long end = finishedAt == 0 ? System.nanoTime() : finishedAt;
+		return (end - startedAt) / 1_000_000;
+	}
+
+	// Destinatários notificados por segundo
+	public double getThroughput() {
+		long elapsed = Math.max(getElapsedMillis(), 1);
+		return getNotifiedRecipients() * 1000.0 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("chunks=%d, recipients=%d, notified=%d, batches=%d, failedBatches=%d, elapsed=%dms, throughput=%.1f/s",
+				getChunks(), getRecipients(), getNotifiedRecipients(), getSentBatches(), getFailedBatches(),
+				getElapsedMillis(), getThroughput());
+	}
+
+}
@@ -1,12 +1,19 @@
 package com.gustavo.libraryapi.service;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
 import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnResultDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
 
@@ -17,11 +24,26 @@ public interface LoanService {
 	Optional<Loan> getById(Long id);
 
 	Loan update(Loan loan);
+	
+	// Devolve os empréstimos em aberto informados pelo id ou pelo isbn do livro, com o resultado de cada item
+	List<LoanReturnResultDTO> returnAll(Collection<Long> ids, Collection<String> isbns);
 
 	Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable);
+	
+	// Versão dos empréstimos (e dos seus livros) encontrados pelo find com o mesmo filtro, sem ler os empréstimos,
+	// obtida conforme a estratégia de contagem. Vazio com CountMode.NONE
+	Optional<ResultVersionDTO> findVersion(LoanFilterDTO filterDTO, CountMode count);
+	
+	// Página sem o count: o total vem da versão. Sem a versão retorna um Slice
+	Slice<Loan> find(LoanFilterDTO filterDTO, Pageable pageable, ResultVersionDTO version);
 
 	Page<Loan> getLoanByBook(Book book, Pageable pageable);
 	
-	List<Loan> getAllLateLoans();
+	List<Loan> findAfter(LoanFilterDTO filterDTO, Loan last, int limit);
+	
+	List<String> getLateLoanEmails(String after, int limit);
+	
+	// Entrega os empréstimos filtrados um a um ao consumidor, retornando a quantidade exportada
+	long export(LoanFilterDTO filterDTO, LocalDate from, LocalDate to, Consumer<LoanExportDTO> consumer);
 
 }
@@ -0,0 +1,16 @@
+package com.gustavo.libraryapi.service;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+
+import reactor.core.publisher.Flux;
+
+// Leituras de livros pelo driver reativo, sem ocupar uma conexão JDBC enquanto o cliente consome a resposta
+public interface ReactiveBookService {
+	
+	Flux<Book> find(Book filter);
+	
+	// Emite NoSuchElementException quando o livro não existe
+	Flux<Loan> getLoansByBook(Long bookId);
+
+}
@@ -0,0 +1,13 @@
+package com.gustavo.libraryapi.service;
+
+import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.model.entity.Loan;
+
+import reactor.core.publisher.Flux;
+
+// Leituras de empréstimos pelo driver reativo
+public interface ReactiveLoanService {
+	
+	Flux<Loan> find(LoanFilterDTO filterDTO);
+
+}
@@ -1,18 +1,21 @@
 package com.gustavo.libraryapi.service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import com.gustavo.libraryapi.model.entity.Loan;
-
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ScheduleService {
 	
 	private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?"; //http://www.cronmaker.com/
@@ -20,17 +23,75 @@ public class ScheduleService {
 	@Value("${application.mail.lateloans.message}")
 	private String message;
 	
+	// Quantidade de emails lidos do banco por consulta
+	@Value("${application.mail.lateloans.chunk-size:1000}")
+	private int chunkSize;
+	
+	// Quantidade máxima de destinatários por mensagem enviada
+	@Value("${application.mail.lateloans.batch-size:50}")
+	private int batchSize;
+	
+	// Quantidade de threads enviando emails ao mesmo tempo
+	@Value("${application.mail.lateloans.workers:4}")
+	private int workers;
+	
 	private final LoanService loanService;
 	private final EmailService emailService;
 	
 	@Scheduled(cron = CRON_LATE_LOANS)
-	public void sendMailToLateSoans() {
-		List<Loan> allLateLoans = loanService.getAllLateLoans();
-		List<String> mailsList = allLateLoans.stream()
-				.map(loan -> loan.getCustomerEmail())
-				.collect(Collectors.toList());
+	public LateLoansReport sendMailToLateSoans() {
+		LateLoansReport report = new LateLoansReport();
+		
+		// Fila limitada + CallerRunsPolicy: quando os workers não dão conta, a própria thread de leitura
+		// envia o lote, o que segura a leitura do banco (backpressure) e mantém a memória constante
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(workers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			String after = "";
+			List<String> chunk;
+			do {
+				chunk = loanService.getLateLoanEmails(after, chunkSize);
+				report.chunkRead(chunk.size());
+				
+				for(int i = 0; i < chunk.size(); i += batchSize) {
+					List<String> batch = new ArrayList<>(chunk.subList(i, Math.min(i + batchSize, chunk.size())));
+					executor.execute(() -> send(batch, report));
+				}
 				
-		emailService.sendMails(message, mailsList);
+				if(!chunk.isEmpty()) {
+					after = chunk.get(chunk.size() - 1);
+					log.info("late loans notification progress: {}", report);
+				}
+			} while(chunk.size() == chunkSize);
+		} finally {
+			executor.shutdown();
+			awaitTermination(executor);
+		}
+		
+		report.finish();
+		log.info("late loans notification finished: {}", report);
+		return report;
 	}
 	
+	private void send(List<String> batch, LateLoansReport report) {
+		try {
+			emailService.sendMails(message, batch);
+			report.batchSent(batch.size());
+		} catch (RuntimeException e) {
+			report.batchFailed();
+			log.error("error sending late loans notification to {} recipients", batch.size(), e);
+		}
+	}
+	
+	private void awaitTermination(ThreadPoolExecutor executor) {
+		try {
+			while(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				log.warn("waiting for {} late loans notification batches", executor.getQueue().size() + executor.getActiveCount());
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
 }
@@ -1,33 +1,76 @@
 package com.gustavo.libraryapi.service.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.exception.BusinessException;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.BookSearchIndex;
 import com.gustavo.libraryapi.service.BookService;
+import com.gustavo.libraryapi.service.CountMode;
 
 @Service
 public class BookServiceImpl implements BookService {
 	
+	private static final int REINDEX_CHUNK_SIZE = 1000;
+	
 	private BookRepository repository;
+	private BookSearchIndex searchIndex;
+	private PageCounter pageCounter;
 	
-	public BookServiceImpl(BookRepository repository) {
+	public BookServiceImpl(BookRepository repository, BookSearchIndex searchIndex, PageCounter pageCounter) {
 		this.repository = repository;
+		this.searchIndex = searchIndex;
+		this.pageCounter = pageCounter;
 	}
 
 	@Override
 	public Book save(Book book) {
-		if(repository.existsByIsbn(book.getIsbn())) {
-			throw new BusinessException("Isbn já cadastrado.");
+		book.setIsbn(Book.normalizeIsbn(book.getIsbn()));
+		// A unicidade é garantida pelo índice único do banco, sem consultar o isbn antes do insert
+		try {
+			return repository.saveAndFlush(book);
+		} catch (DataIntegrityViolationException e) {
+			if(isIsbnViolation(e)) {
+				throw new BusinessException("Isbn já cadastrado.");
+			}
+			throw e;
 		}
-		return repository.save(book);
+	}
+	
+	private boolean isIsbnViolation(DataIntegrityViolationException e) {
+		if(!(e.getCause() instanceof ConstraintViolationException)) {
+			return false;
+		}
+		String constraint = ((ConstraintViolationException) e.getCause()).getConstraintName();
+		return constraint != null && constraint.toLowerCase().contains(Book.ISBN_INDEX);
 	}
 
 	@Override
@@ -48,30 +91,111 @@ public class BookServiceImpl implements BookService {
 		if(book == null || book.getId() == null) {
 			throw new IllegalArgumentException("Book id cant be null");
 		}
+		// Merge pela entidade: o @Version compara a versão lida pelo cliente (409 se outro update passou antes), o
+		// @DynamicUpdate grava só as colunas alteradas e o cache de segundo nível é atualizado apenas para este livro
 		return this.repository.save(book);
 	}
 
 	@Override
 	public Page<Book> find(Book filter, Pageable pageRequest) {
+		return repository.findAll(example(filter), pageRequest);
+	}
+
+	@Override
+	public Optional<ResultVersionDTO> findVersion(Book filter, CountMode count) {
+		Example<Book> example = example(filter);
+		// As strings são comparadas ignorando maiúsculas, então o filtro em minúsculas serve de chave do cache
+		List<Object> key = Arrays.asList(filter.getId(), lowerCase(filter.getTitle()), lowerCase(filter.getAuthor()), 
+				lowerCase(filter.getIsbn()));
+		// Só a listagem sem filtro tem estimativa (linhas da tabela)
+		LongSupplier estimate = key.stream().allMatch(Objects::isNull) ? repository::estimateCount : null;
+		return pageCounter.count("books", count, key, () -> repository.findVersion(example), estimate);
+	}
+
+	@Override
+	public Slice<Book> find(Book filter, Pageable pageRequest, ResultVersionDTO version) {
+		return PageCounter.page(repository.findSlice(example(filter), pageRequest), version);
+	}
+	
+	private static String lowerCase(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+
+	private Example<Book> example(Book filter) {
 		
 		// Query by Example
 		// A consulta por exemplo (QBE) é uma técnica de consulta amigável com uma interface simples. Ele permite a criação de 
 		// consultas dinâmicas e não exige que você escreva consultas que contenham nomes de campos e nem que você escreva 
 		// consultas usando linguagens de consulta específicas.
 		
-		Example<Book> example = Example.of(filter, 
+		return Example.of(filter, 
 				ExampleMatcher
 					.matching() // Permite que as configurações sejam feitas
 					.withIgnoreCase()// Nos campos string, vai verificar no banco ignorando se o usuário passou valor em cauxa alta ou em caixa baixa
 					.withIgnoreNullValues()// Se foi passado alguma propriedade nula, será ignorada
 					.withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));// Vai informar se comparação das string serão feitas pelo início, pelo fim, em qualquer parte ou o valor exato que foi passado
-		
-		return repository.findAll(example, pageRequest);
 	}
 
 	@Override
 	public Optional<Book> getBookByIsbn(String isbn) {
-		return repository.findByIsbn(isbn);
+		return repository.findByIsbn(Book.normalizeIsbn(isbn));
+	}
+
+	@Override
+	public List<Book> findAfter(Book filter, Book last, int limit) {
+		// A página é sempre a primeira (sem OFFSET), o cursor é aplicado na própria consulta
+		PageRequest pageRequest = PageRequest.of(0, limit);
+		if(last == null) {
+			return repository.findFirstPage(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), pageRequest);
+		}
+		return repository.findPageAfter(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), 
+				last.getTitle(), last.getId(), pageRequest);
+	}
+
+	// Retorna apenas os livros salvos, os demais foram rejeitados por isbn já cadastrado (no banco ou repetido no bloco)
+	@Override
+	@Transactional
+	public List<Book> importBooks(List<Book> books) {
+		books.forEach(book -> book.setIsbn(Book.normalizeIsbn(book.getIsbn())));
+		Set<String> isbns = books.stream().map(Book::getIsbn).collect(Collectors.toSet());
+		Set<String> taken = new HashSet<>(repository.findExistingIsbns(isbns));
+		
+		List<Book> accepted = new ArrayList<>();
+		for(Book book : books) {
+			if(taken.add(book.getIsbn())) {
+				accepted.add(book);
+			}
+		}
+		return accepted.isEmpty() ? accepted : repository.insertAll(accepted);
+	}
+
+	// O índice devolve os ids da página e os livros são carregados em uma única consulta, mantendo a ordem do índice
+	@Override
+	public Page<Book> search(String text, Pageable pageRequest) {
+		Page<Long> ids = searchIndex.search(text, pageRequest);
+		if(ids.getContent().isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageRequest, ids.getTotalElements());
+		}
+		Map<Long, Book> books = repository.findAllById(ids.getContent()).stream()
+				.collect(Collectors.toMap(Book::getId, Function.identity()));
+		List<Book> ranked = ids.getContent().stream().map(books::get).filter(Objects::nonNull).collect(Collectors.toList());
+		return new PageImpl<>(ranked, pageRequest, ids.getTotalElements());
+	}
+
+	// Cada bloco é lido em uma consulta separada (sem transação), então o catálogo nunca fica inteiro em memória
+	@Override
+	public long reindex() {
+		PageRequest chunk = PageRequest.of(0, REINDEX_CHUNK_SIZE);
+		Stream<Book> books = Stream.iterate(repository.findByIdGreaterThanOrderByIdAsc(0L, chunk), page -> !page.isEmpty(), 
+				page -> page.size() < REINDEX_CHUNK_SIZE ? Collections.emptyList() 
+						: repository.findByIdGreaterThanOrderByIdAsc(page.get(page.size() - 1).getId(), chunk))
+				.flatMap(List::stream);
+		return searchIndex.rebuild(books::iterator);
+	}
+
+	@Override
+	public Optional<BookLoanStatisticsDTO> getLoanStatistics(Long id) {
+		return repository.findLoanStatisticsById(id);
 	}
 
 }
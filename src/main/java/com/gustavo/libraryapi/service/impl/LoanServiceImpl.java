@@ -1,32 +1,67 @@
 package com.gustavo.libraryapi.service.impl;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
 import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnResultDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.exception.BusinessException;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookRepository;
 import com.gustavo.libraryapi.model.repository.LoanRepository;
+import com.gustavo.libraryapi.model.repository.LoanRepository.OpenLoan;
+import com.gustavo.libraryapi.service.CountMode;
 import com.gustavo.libraryapi.service.LoanService;
 
 @Service
 public class LoanServiceImpl implements LoanService {
 	
 	private LoanRepository repository;
+	private BookRepository bookRepository;
+	private BookLoanStatisticsRepository statisticsRepository;
+	private PageCounter pageCounter;
 	
-	public LoanServiceImpl(LoanRepository repository) {
+	public LoanServiceImpl(LoanRepository repository, BookRepository bookRepository, 
+			BookLoanStatisticsRepository statisticsRepository, PageCounter pageCounter) {
 		this.repository = repository;
+		this.bookRepository = bookRepository;
+		this.statisticsRepository = statisticsRepository;
+		this.pageCounter = pageCounter;
 	}
 
+	// A disponibilidade vem da flag "loaned" das estatísticas do livro, então o custo não depende do histórico de
+	// empréstimos. A flag, as estatísticas e o empréstimo são gravados na mesma transação
 	@Override
+	@Transactional
 	public Loan save(Loan loan) {
-		if(repository.existsByBookAndNotReturned(loan.getBook())) {
+		if(statisticsRepository.registerLoan(loan.getBook().getId(), loan.getLoanDate()) == 0) {
 			throw new BusinessException("Book already loaned");
 		}
 		return repository.save(loan);
@@ -38,13 +73,114 @@ public class LoanServiceImpl implements LoanService {
 	}
 
 	@Override
+	@Transactional
 	public Loan update(Loan loan) {
+		Long bookId = loan.getBook().getId();
+		if(Boolean.TRUE.equals(loan.getReturned())) {
+			// Só a passagem de aberto para devolvido libera o livro e conta nas estatísticas: o update condicional não
+			// altera um empréstimo já devolvido. A devolução (e a nova versão) já fica gravada, sem merge
+			LocalDate today = LocalDate.now();
+			if(repository.markReturned(Collections.singleton(loan.getId()), today) == 1) {
+				statisticsRepository.markReturned(bookId, loanDays(loan.getLoanDate(), today));
+				loan.setReturnDate(today);
+				loan.setVersion(loan.getVersion() + 1);
+			}
+			return loan;
+		}
+		if(repository.findReturnedById(loan.getId()).orElse(false)) {
+			// Empréstimo devolvido sendo reaberto (pela situação gravada, não pela data): desfaz a devolução nas
+			// estatísticas do livro com os dias contados nela. Sem data de devolução não há como desfazê-la.
+			// Se o livro já foi emprestado novamente, nada é alterado. Duas reaberturas simultâneas não passam
+			// juntas: a segunda encontra o livro emprestado ou falha no bloqueio otimista do merge
+			if(loan.getReturnDate() == null) {
+				throw new BusinessException("Loan has no return date");
+			}
+			if(statisticsRepository.reopenLoan(bookId, loanDays(loan.getLoanDate(), loan.getReturnDate())) == 0) {
+				throw new BusinessException("Book already loaned");
+			}
+			loan.setReturnDate(null);
+		}
 		return repository.save(loan);
 	}
+	
+	// Sem carregar entidades: uma consulta pelos empréstimos em aberto, um update para todos eles e um update dos livros
+	// por duração de empréstimo. Os ids e isbns não encontrados em aberto custam uma consulta a mais para separar os
+	// já devolvidos dos inexistentes
+	@Override
+	@Transactional
+	public List<LoanReturnResultDTO> returnAll(Collection<Long> ids, Collection<String> isbns) {
+		Set<Long> loanIds = new LinkedHashSet<>(ids);
+		Set<String> bookIsbns = isbns.stream().map(Book::normalizeIsbn).collect(Collectors.toCollection(LinkedHashSet::new));
+		
+		Map<Long, OpenLoan> openById = loanIds.isEmpty() ? Collections.emptyMap() : repository.findOpenByIdIn(loanIds)
+				.stream().collect(Collectors.toMap(OpenLoan::getId, Function.identity()));
+		Map<String, OpenLoan> openByIsbn = bookIsbns.isEmpty() ? Collections.emptyMap() : repository.findOpenByBookIsbnIn(bookIsbns)
+				.stream().collect(Collectors.toMap(OpenLoan::getIsbn, Function.identity(), (first, second) -> first));
+		
+		Map<Long, OpenLoan> returning = new HashMap<>(openById);
+		openByIsbn.values().forEach(loan -> returning.putIfAbsent(loan.getId(), loan));
+		if(!returning.isEmpty()) {
+			LocalDate today = LocalDate.now();
+			// Um empréstimo devolvido por outra requisição depois da consulta não é alterado pelo update condicional:
+			// as estatísticas e os resultados viriam da leitura desatualizada, então a transação é desfeita (409)
+			if(repository.markReturned(returning.keySet(), today) != returning.size()) {
+				throw new OptimisticLockingFailureException("Loans returned concurrently, try again");
+			}
+			returning.values().stream()
+				.collect(Collectors.groupingBy(loan -> loanDays(loan.getLoanDate(), today), 
+						Collectors.mapping(OpenLoan::getBookId, Collectors.toList())))
+				.forEach((loanDays, bookIds) -> statisticsRepository.markAllReturned(bookIds, loanDays));
+		}
+		
+		Set<Long> missingIds = loanIds.stream().filter(id -> !openById.containsKey(id)).collect(Collectors.toSet());
+		Set<Long> existingIds = missingIds.isEmpty() ? Collections.emptySet() : repository.findExistingIds(missingIds);
+		Set<String> missingIsbns = bookIsbns.stream().filter(isbn -> !openByIsbn.containsKey(isbn)).collect(Collectors.toSet());
+		Set<String> existingIsbns = missingIsbns.isEmpty() ? Collections.emptySet() : bookRepository.findExistingIsbns(missingIsbns);
+		
+		List<LoanReturnResultDTO> results = new ArrayList<>(loanIds.size() + bookIsbns.size());
+		for(Long id : loanIds) {
+			OpenLoan loan = openById.get(id);
+			results.add(new LoanReturnResultDTO(id, loan == null ? null : loan.getIsbn(), 
+					returnStatus(loan != null, existingIds.contains(id))));
+		}
+		for(String isbn : bookIsbns) {
+			OpenLoan loan = openByIsbn.get(isbn);
+			results.add(new LoanReturnResultDTO(loan == null ? null : loan.getId(), isbn, 
+					returnStatus(loan != null, existingIsbns.contains(isbn))));
+		}
+		return results;
+	}
+	
+	private static LoanReturnResultDTO.Status returnStatus(boolean returned, boolean exists) {
+		if(returned) {
+			return LoanReturnResultDTO.Status.RETURNED;
+		}
+		return exists ? LoanReturnResultDTO.Status.ALREADY_RETURNED : LoanReturnResultDTO.Status.NOT_FOUND;
+	}
+	
+	// Dias entre o empréstimo e a devolução (registrada na data em que o empréstimo é marcado como devolvido)
+	private static long loanDays(LocalDate loanDate, LocalDate returnDate) {
+		return loanDate == null ? 0 : Math.max(0, ChronoUnit.DAYS.between(loanDate, returnDate));
+	}
 
 	@Override
 	public Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable) {
-		return repository.findByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
+		return repository.findByBookIsbnOrCustomer(Book.normalizeIsbn(filterDTO.getIsbn()), filterDTO.getCustomer(), pageable);
+	}
+
+	@Override
+	public Optional<ResultVersionDTO> findVersion(LoanFilterDTO filterDTO, CountMode count) {
+		String isbn = Book.normalizeIsbn(filterDTO.getIsbn());
+		String customer = filterDTO.getCustomer();
+		// A busca sempre filtra por isbn ou cliente, então não há estimativa pelas linhas da tabela
+		return pageCounter.count("loans", count, Arrays.asList(isbn, customer), 
+				() -> repository.findVersionByBookIsbnOrCustomer(isbn, customer), null);
+	}
+
+	@Override
+	public Slice<Loan> find(LoanFilterDTO filterDTO, Pageable pageable, ResultVersionDTO version) {
+		return PageCounter.page(repository.findSliceByBookIsbnOrCustomer(Book.normalizeIsbn(filterDTO.getIsbn()), 
+				filterDTO.getCustomer(), pageable), version);
 	}
 
 	@Override
@@ -53,10 +189,36 @@ public class LoanServiceImpl implements LoanService {
 	}
 
 	@Override
-	public List<Loan> getAllLateLoans() {
+	public List<Loan> findAfter(LoanFilterDTO filterDTO, Loan last, int limit) {
+		PageRequest pageRequest = PageRequest.of(0, limit);
+		if(last == null) {
+			return repository.findFirstPageByBookIsbnOrCustomer(Book.normalizeIsbn(filterDTO.getIsbn()), filterDTO.getCustomer(), pageRequest);
+		}
+		return repository.findPageByBookIsbnOrCustomerAfter(Book.normalizeIsbn(filterDTO.getIsbn()), filterDTO.getCustomer(), 
+				last.getLoanDate(), last.getId(), pageRequest);
+	}
+
+	@Override
+	public List<String> getLateLoanEmails(String after, int limit) {
 		final Integer loanDays = 4;
 		LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
-		return repository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
+		return repository.findLateLoanEmailsAfter(threeDaysAgo, after, PageRequest.of(0, limit));
+	}
+
+	// A transação mantém o cursor aberto enquanto o consumidor escreve cada linha
+	@Override
+	@Transactional(readOnly = true)
+	public long export(LoanFilterDTO filterDTO, LocalDate from, LocalDate to, Consumer<LoanExportDTO> consumer) {
+		long count = 0;
+		try(Stream<LoanExportDTO> loans = repository.streamForExport(Book.normalizeIsbn(filterDTO.getIsbn()), 
+				filterDTO.getCustomer(), from, to)) {
+			Iterator<LoanExportDTO> iterator = loans.iterator();
+			while(iterator.hasNext()) {
+				consumer.accept(iterator.next());
+				count++;
+			}
+		}
+		return count;
 	}
 
 }
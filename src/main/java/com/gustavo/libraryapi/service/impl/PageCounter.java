@@ -0,0 +1,135 @@
+package com.gustavo.libraryapi.service.impl;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
+import com.gustavo.libraryapi.service.CountMode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Total das buscas paginadas conforme o CountMode. A contagem é a consulta de versão da busca (quantidade, soma dos
+// ids e hash das versões), que também dá o ETag da listagem, então o count da página não é executado à parte.
+// O tempo das contagens executadas fica em library.paging.count e o tempo economizado pelas demais estratégias em
+// library.paging.count.saved, calculado pela última contagem exata da mesma busca
+@Component
+public class PageCounter {
+	
+	private final MeterRegistry registry;
+	private final Cache<Object, Counted> counts;
+	private final Map<String, Long> lastCountNanos = new ConcurrentHashMap<>();
+	
+	public PageCounter(MeterRegistry registry, @Value("${application.paging.count-cache.ttl:30s}") Duration ttl, 
+			@Value("${application.paging.count-cache.max-size:10000}") long maxSize) {
+		this.registry = registry;
+		this.counts = Caffeine.newBuilder().expireAfterWrite(ttl).maximumSize(maxSize).build();
+	}
+	
+	// query identifica a busca nas métricas (ex: books) e filter é o filtro já normalizado, chave do cache.
+	// estimate pode ser nulo quando a busca não tem estimativa. Vazio com NONE
+	public Optional<ResultVersionDTO> count(String query, CountMode mode, Object filter, Supplier<ResultVersionDTO> exact, 
+			LongSupplier estimate) {
+		switch(mode) {
+		case NONE:
+			saved(query, mode, lastCountNanos.getOrDefault(query, 0L));
+			return Optional.empty();
+		case ESTIMATED:
+			if(estimate != null) {
+				long start = System.nanoTime();
+				long count = estimate.getAsLong();
+				long elapsed = record(query, mode, start);
+				saved(query, mode, lastCountNanos.getOrDefault(query, 0L) - elapsed);
+				return Optional.of(ResultVersionDTO.estimated(count));
+			}
+			return Optional.of(cached(query, filter, exact));
+		case CACHED:
+			return Optional.of(cached(query, filter, exact));
+		default:
+			return Optional.of(exact(query, CountMode.EXACT, exact).version);
+		}
+	}
+	
+	// Página com o total da versão. O total em cache ou estimado pode estar defasado, então nunca fica menor que o
+	// indicado pela própria página. Sem versão (NONE) retorna o Slice
+	public static <T> Slice<T> page(Slice<T> slice, ResultVersionDTO version) {
+		if(version == null) {
+			return slice;
+		}
+		Pageable pageable = slice.getPageable();
+		long seen = pageable.getOffset() + slice.getNumberOfElements() + (slice.hasNext() ? 1 : 0);
+		return new PageImpl<>(slice.getContent(), pageable, Math.max(version.getCount(), seen));
+	}
+	
+	// Só a quantidade: as somas em cache podem estar defasadas, e um ETag montado com elas daria 304 para uma
+	// listagem já alterada. Assim como na estimativa, a resposta fica sem ETag
+	private ResultVersionDTO cached(String query, Object filter, Supplier<ResultVersionDTO> exact) {
+		Object key = Arrays.asList(query, filter);
+		Counted counted = counts.getIfPresent(key);
+		if(counted != null) {
+			saved(query, CountMode.CACHED, counted.nanos);
+		} else {
+			counted = exact(query, CountMode.CACHED, exact);
+			counts.put(key, counted);
+		}
+		return ResultVersionDTO.estimated(counted.version.getCount());
+	}
+	
+	private Counted exact(String query, CountMode mode, Supplier<ResultVersionDTO> exact) {
+		long start = System.nanoTime();
+		ResultVersionDTO version = exact.get();
+		long elapsed = record(query, mode, start);
+		lastCountNanos.put(query, elapsed);
+		return new Counted(version, elapsed);
+	}
+	
+	private long record(String query, CountMode mode, long start) {
+		long elapsed = System.nanoTime() - start;
+		Timer.builder("library.paging.count")
+			.description("Time spent counting the results of paged queries")
+			.tag("query", query)
+			.tag("mode", mode.tag())
+			.register(registry)
+			.record(elapsed, TimeUnit.NANOSECONDS);
+		return elapsed;
+	}
+	
+	private void saved(String query, CountMode mode, long nanos) {
+		if(nanos <= 0) {
+			return;
+		}
+		Counter.builder("library.paging.count.saved")
+			.description("Estimated count time avoided by the cached, estimated and none count modes")
+			.baseUnit("seconds")
+			.tag("query", query)
+			.tag("mode", mode.tag())
+			.register(registry)
+			.increment(nanos / 1e9);
+	}
+	
+	private static class Counted {
+		private final ResultVersionDTO version;
+		private final long nanos;
+		
+		Counted(ResultVersionDTO version, long nanos) {
+			this.version = version;
+			this.nanos = nanos;
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.gustavo.libraryapi.service.impl;
+
+import java.util.NoSuchElementException;
+
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Service;
+
+import com.gustavo.libraryapi.config.R2dbcConfig;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookReactiveRepository;
+import com.gustavo.libraryapi.model.repository.LoanReactiveRepository;
+import com.gustavo.libraryapi.service.ReactiveBookService;
+
+import reactor.core.publisher.Flux;
+
+@Service
+@Conditional(R2dbcConfig.H2Database.class)
+public class ReactiveBookServiceImpl implements ReactiveBookService {
+	
+	private BookReactiveRepository repository;
+	private LoanReactiveRepository loanRepository;
+	
+	public ReactiveBookServiceImpl(BookReactiveRepository repository, LoanReactiveRepository loanRepository) {
+		this.repository = repository;
+		this.loanRepository = loanRepository;
+	}
+
+	@Override
+	public Flux<Book> find(Book filter) {
+		return repository.find(filter.getTitle(), filter.getAuthor(), filter.getIsbn());
+	}
+
+	@Override
+	public Flux<Loan> getLoansByBook(Long bookId) {
+		return repository.existsById(bookId)
+				.flatMapMany(exists -> exists 
+						? loanRepository.findByBook(bookId) 
+						: Flux.error(new NoSuchElementException("Book not found")));
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.gustavo.libraryapi.service.impl;
+
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Service;
+
+import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.config.R2dbcConfig;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.LoanReactiveRepository;
+import com.gustavo.libraryapi.service.ReactiveLoanService;
+
+import reactor.core.publisher.Flux;
+
+@Service
+@Conditional(R2dbcConfig.H2Database.class)
+public class ReactiveLoanServiceImpl implements ReactiveLoanService {
+	
+	private LoanReactiveRepository repository;
+	
+	public ReactiveLoanServiceImpl(LoanReactiveRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public Flux<Loan> find(LoanFilterDTO filterDTO) {
+		return repository.findByBookIsbnOrCustomer(Book.normalizeIsbn(filterDTO.getIsbn()), filterDTO.getCustomer());
+	}
+
+}
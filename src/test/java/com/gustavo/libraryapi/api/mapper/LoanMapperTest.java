@@ -0,0 +1,50 @@
+package com.gustavo.libraryapi.api.mapper;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+
+import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+
+public class LoanMapperTest {
+	
+	LoanMapper mapper = Mappers.getMapper(LoanMapper.class);
+	
+	@Test
+	@DisplayName("Deve mapear um empréstimo com o livro para DTO")
+	public void toDTOTest() {
+		Book book = Book.builder().id(2l).title("As aventuras").author("Artur").isbn("123").build();
+		Loan loan = Loan.builder().id(1l).book(book).customer("Fulano").customerEmail("fulano@email.com")
+				.loanDate(LocalDate.now()).build();
+		
+		LoanDTO dto = mapper.toDTO(loan);
+		
+		Assertions.assertThat(dto.getId()).isEqualTo(1l);
+		Assertions.assertThat(dto.getCustomer()).isEqualTo("Fulano");
+		Assertions.assertThat(dto.getEmail()).isEqualTo("fulano@email.com");
+		Assertions.assertThat(dto.getIsbn()).isEqualTo("123");
+		Assertions.assertThat(dto.getBook().getId()).isEqualTo(2l);
+		Assertions.assertThat(dto.getBook().getTitle()).isEqualTo("As aventuras");
+		Assertions.assertThat(dto.getBook().getAuthor()).isEqualTo("Artur");
+		Assertions.assertThat(dto.getBook().getIsbn()).isEqualTo("123");
+	}
+	
+	@Test
+	@DisplayName("Deve mapear uma página de empréstimos mantendo a ordem")
+	public void toDTOListTest() {
+		Book book = Book.builder().id(2l).isbn("123").build();
+		List<Loan> loans = Arrays.asList(Loan.builder().id(1l).book(book).build(), Loan.builder().id(3l).book(book).build());
+		
+		List<LoanDTO> dtos = mapper.toDTOList(loans);
+		
+		Assertions.assertThat(dtos).extracting(LoanDTO::getId).containsExactly(1l, 3l);
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Modo async: os métodos dos controladores rodam no executor limitado e a resposta sai no async dispatch
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "application.web.execution-mode=async")
+@AutoConfigureMockMvc
+public class AsyncExecutionModeTest {
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	MeterRegistry registry;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() {
+		book = bookRepository.save(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve obter o livro no executor do modo async medindo as etapas da requisição")
+	public void getBookTest() throws Exception {
+		// Cenário
+		long completed = (long) registry.get("executor.completed").tags("name", "http.async").functionCounter().count();
+		long requests = stage("db").count();
+		
+		// Execução
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/books/" + book.getId()).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.request().asyncStarted())
+			.andReturn();
+		String etag = mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("isbn").value("001"))
+			.andReturn().getResponse().getHeader("ETag");
+		
+		// Verificação
+		Assertions.assertThat(etag).isNotNull();
+		Assertions.assertThat((long) registry.get("executor.completed").tags("name", "http.async").functionCounter().count())
+				.isEqualTo(completed + 1);
+		Assertions.assertThat(registry.get("http.async.queue.wait").timer().count()).isPositive();
+		Assertions.assertThat(stage("db").count()).isEqualTo(requests + 1);
+		Assertions.assertThat(stage("db").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+		Assertions.assertThat(stage("serialization").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+		
+		// O ETag é verificado no executor e o 304 sai no async dispatch
+		MvcResult notModified = mvc.perform(MockMvcRequestBuilders.get("/api/books/" + book.getId())
+				.accept(MediaType.APPLICATION_JSON).header("If-None-Match", etag))
+			.andReturn();
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(notModified))
+			.andExpect(MockMvcResultMatchers.status().isNotModified());
+	}
+	
+	@Test
+	@DisplayName("Deve tratar no async dispatch os erros lançados no executor")
+	public void bookNotFoundTest() throws Exception {
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/books/" + (book.getId() + 1)))
+			.andExpect(MockMvcResultMatchers.request().asyncStarted())
+			.andReturn();
+		
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+			.andExpect(MockMvcResultMatchers.status().isNotFound());
+	}
+	
+	@Test
+	@DisplayName("Deve manter na thread da requisição os métodos que escrevem direto na resposta")
+	public void voidMethodTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.delete("/api/books/" + book.getId()))
+			.andExpect(MockMvcResultMatchers.request().asyncNotStarted())
+			.andExpect(MockMvcResultMatchers.status().isNoContent());
+	}
+	
+	private Timer stage(String stage) {
+		Timer timer = registry.find("library.request.stage").tags("uri", "/api/books/{id}", "method", "GET", "stage", stage)
+				.timer();
+		return timer != null ? timer : Timer.builder("library.request.stage")
+				.tags("uri", "/api/books/{id}", "method", "GET", "stage", stage).register(registry);
+	}
+
+}
@@ -1,8 +1,13 @@
 package com.gustavo.libraryapi.api.resource;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+import org.assertj.core.api.Assertions;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,7 +21,9 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -24,11 +31,19 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.gustavo.libraryapi.api.dto.BookDTO;
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.api.dto.PageCursor;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.exception.BusinessException;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.service.BookService;
+import com.gustavo.libraryapi.service.CountMode;
 import com.gustavo.libraryapi.service.LoanService;
 
 
@@ -132,6 +147,7 @@ public class BookControllerTest {
 						.id(id).title(createNewBook().getTitle())
 						.author(createNewBook().getAuthor())
 						.isbn(createNewBook().getIsbn())
+						.version(3l)
 						.build();
 		BDDMockito.given(service.getById(id)).willReturn(Optional.of(book));
 		
@@ -143,12 +159,36 @@ public class BookControllerTest {
 		mvc
 			.perform(request)
 			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.header().string("ETag", "W/\"3\""))
+			.andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=60, public"))
 			.andExpect( MockMvcResultMatchers.jsonPath("id").value(id) )
 			.andExpect( MockMvcResultMatchers.jsonPath("title").value(createNewBook().getTitle()) )
 			.andExpect( MockMvcResultMatchers.jsonPath("author").value(createNewBook().getAuthor()) )
 			.andExpect( MockMvcResultMatchers.jsonPath("isbn").value(createNewBook().getIsbn()) );
 	}
 	
+	@Test
+	@DisplayName("Deve retornar not modified quando o cliente já tem a versão atual do livro")
+	public void getBookNotModifiedTest() throws Exception {
+		// Cenário
+		Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").version(3l).build();
+		BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+		
+		// Execução
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/1"))
+				.header("If-None-Match", "\"3\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		// Verificação
+		mvc
+			.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isNotModified())
+			.andExpect(MockMvcResultMatchers.header().string("ETag", "W/\"3\""))
+			.andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=60, public"))
+			.andExpect(MockMvcResultMatchers.content().string(""));
+	}
+	
 	@Test
 	@DisplayName("Deve retornar resource not found quando o livro procurado não existir")
 	public void bookNotFoundTest() throws Exception {
@@ -165,6 +205,27 @@ public class BookControllerTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Deve obter as estatísticas de empréstimo de um livro")
+	public void getLoanStatisticsTest() throws Exception {
+		// Cenário
+		LocalDate lastLoanDate = LocalDate.of(2021, 10, 1);
+		BDDMockito.given(service.getLoanStatistics(1l))
+			.willReturn(Optional.of(new BookLoanStatisticsDTO(3l, true, lastLoanDate, 2l, 9l)));
+		BDDMockito.given(service.getLoanStatistics(2l)).willReturn(Optional.empty());
+		
+		// Execução e verificação
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/statistics")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("totalLoans").value(3))
+			.andExpect(MockMvcResultMatchers.jsonPath("loaned").value(true))
+			.andExpect(MockMvcResultMatchers.jsonPath("lastLoanDate").value("2021-10-01"))
+			.andExpect(MockMvcResultMatchers.jsonPath("averageLoanDays").value(4.5));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/2/statistics")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isNotFound());
+	}
+	
 	@Test
 	@DisplayName("Deve deletar um livro")
 	public void deleteBookTest() throws Exception {
@@ -201,7 +262,7 @@ public class BookControllerTest {
 		BDDMockito.given(service.getById(id)).willReturn(Optional.of(updatingBook));
 		
 		Book updateBook = Book.builder().id(id).author("Artur").title("As aventuras").isbn("321").build();
-		BDDMockito.given(service.update(updatingBook)).willReturn(updateBook);
+		BDDMockito.given(service.update(updateBook)).willReturn(updateBook);
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.put(BOOK_API.concat("/" + 1))
@@ -236,6 +297,26 @@ public class BookControllerTest {
 			.andExpect(MockMvcResultMatchers.status().isNotFound());
 	}
 	
+	@Test
+	@DisplayName("Deve retornar 409 ao atualizar um livro alterado por outra requisição")
+	public void updateStaleBookTest() throws Exception {
+		String json = new ObjectMapper().writeValueAsString(createNewBook());
+		
+		Book book = Book.builder().id(1l).title("some title").author("some author").isbn("321").build();
+		BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+		BDDMockito.given(service.update(Mockito.any(Book.class)))
+			.willThrow(new ObjectOptimisticLockingFailureException(Book.class, 1l));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.put(BOOK_API.concat("/" + 1))
+				.content(json)
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isConflict());
+	}
+	
 	@Test
 	@DisplayName("Deve filtrar livros")
 	public void FindBooksTest() throws Exception {
@@ -244,8 +325,10 @@ public class BookControllerTest {
 		
 		Book book = Book.builder().id(id).title(createNewBook().getTitle()).author(createNewBook().getAuthor()).isbn(createNewBook().getIsbn()).build();
 		
-		BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+		BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.any(Pageable.class), Mockito.any()))
 					.willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 100), 1));
+		BDDMockito.given(service.findVersion(Mockito.any(Book.class), Mockito.eq(CountMode.EXACT)))
+					.willReturn(Optional.of(new ResultVersionDTO(1l, 1l, 0l)));
 		
 		String queryString = String.format("?title=%s&author=%s&page=0&size=100",
 				book.getTitle(), book.getAuthor());
@@ -255,13 +338,273 @@ public class BookControllerTest {
 		
 		mvc.perform(request)
 			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.header().string("ETag", "W/\"1-1-0\""))
 			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
 			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(1))
-			.andExpect(MockMvcResultMatchers.jsonPath("pageable.pageSize").value(100))
-			.andExpect(MockMvcResultMatchers.jsonPath("pageable.pageNumber").value(0));
+			.andExpect(MockMvcResultMatchers.jsonPath("size").value(100))
+			.andExpect(MockMvcResultMatchers.jsonPath("number").value(0));
 		
 	}
 		
+	@Test
+	@DisplayName("Deve filtrar livros em CBOR quando o cliente pedir application/cbor, mantendo JSON como padrão")
+	public void findBooksCborTest() throws Exception {
+		// Cenário
+		Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+		
+		BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.any(Pageable.class), Mockito.any()))
+					.willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1));
+		BDDMockito.given(service.findVersion(Mockito.any(Book.class), Mockito.eq(CountMode.EXACT)))
+					.willReturn(Optional.of(new ResultVersionDTO(1l, 1l, 0l)));
+		
+		// Execução
+		byte[] cbor = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=artur&size=10"))
+				.accept(MediaType.APPLICATION_CBOR))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_CBOR))
+			.andExpect(MockMvcResultMatchers.header().string("Vary", Matchers.containsString("Accept")))
+			.andReturn().getResponse().getContentAsByteArray();
+		
+		// Verificação
+		PageDTO<BookDTO> page = new CBORMapper().readValue(cbor, new TypeReference<PageDTO<BookDTO>>() {});
+		Assertions.assertThat(page.getContent()).extracting(BookDTO::getIsbn).containsExactly("001");
+		Assertions.assertThat(page.getTotalElements()).isEqualTo(1);
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=artur&size=10")))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
+		
+	@Test
+	@DisplayName("Deve criar um livro enviado em CBOR")
+	public void createBookCborTest() throws Exception {
+		// Cenário
+		BookDTO dto = createNewBook();
+		Book savedBook = Book.builder().id(10l).author("Artur").title("As aventuras").isbn("001").build();
+		
+		BDDMockito.given(service.save(Mockito.any(Book.class))).willReturn(savedBook);
+		CBORMapper mapper = new CBORMapper();
+		
+		// Execução
+		byte[] cbor = mvc.perform(MockMvcRequestBuilders.post(BOOK_API)
+				.contentType(MediaType.APPLICATION_CBOR)
+				.accept(MediaType.APPLICATION_CBOR)
+				.content(mapper.writeValueAsBytes(dto)))
+			.andExpect(MockMvcResultMatchers.status().isCreated())
+			.andReturn().getResponse().getContentAsByteArray();
+		
+		// Verificação
+		BookDTO created = mapper.readValue(cbor, BookDTO.class);
+		Assertions.assertThat(created.getId()).isEqualTo(10l);
+		Assertions.assertThat(created.getIsbn()).isEqualTo(dto.getIsbn());
+	}
+		
+	@Test
+	@DisplayName("Deve retornar not modified sem buscar a página quando a versão da listagem não mudou")
+	public void findBooksNotModifiedTest() throws Exception {
+		
+		BDDMockito.given(service.findVersion(Mockito.any(Book.class), Mockito.any(CountMode.class)))
+					.willReturn(Optional.of(new ResultVersionDTO(1l, 1l, 0l)));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras"))
+				.header("If-None-Match", "\"1-1-0\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isNotModified())
+			.andExpect(MockMvcResultMatchers.header().string("ETag", "W/\"1-1-0\""));
+		
+		Mockito.verify(service, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class), Mockito.any());
+	}
+		
+	@Test
+	@DisplayName("Deve filtrar livros sem contar quando a requisição pede count=none")
+	public void findBooksWithoutCountTest() throws Exception {
+		
+		Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+		
+		BDDMockito.given(service.findVersion(Mockito.any(Book.class), Mockito.eq(CountMode.NONE))).willReturn(Optional.empty());
+		BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.any(Pageable.class), Mockito.isNull()))
+					.willReturn(new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 1), true));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("?author=artur&size=1&count=none"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		// Slice: sem total e sem ETag
+		mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("last").value(false))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").doesNotExist())
+			.andExpect(MockMvcResultMatchers.header().doesNotExist("ETag"));
+	}
+		
+	@Test
+	@DisplayName("Deve filtrar livros usando cursor")
+	public void findBooksAfterCursorTest() throws Exception {
+		
+		Book first = Book.builder().id(1l).title("A").author("Artur").isbn("001").build();
+		Book second = Book.builder().id(2l).title("B").author("Artur").isbn("002").build();
+		Book third = Book.builder().id(3l).title("C").author("Artur").isbn("003").build();
+		
+		BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.isNull(), Mockito.eq(3)))
+					.willReturn(Arrays.asList(first, second, third));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("?author=Artur&after=&size=2"))
+		.accept(MediaType.APPLICATION_JSON);
+		
+		String next = new PageCursor("B", 2l).encode();
+		
+		mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(2)))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[1].id").value(2))
+			.andExpect(MockMvcResultMatchers.jsonPath("size").value(2))
+			.andExpect(MockMvcResultMatchers.jsonPath("next").value(next))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").doesNotExist());
+		
+		BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.any(Book.class), Mockito.eq(3)))
+					.willReturn(Arrays.asList(third));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?author=Artur&size=2&after=" + next))
+				.accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("next").doesNotExist());
+		
+		Mockito.verify(service).findAfter(Mockito.any(Book.class), 
+				Mockito.eq(Book.builder().id(2l).title("B").build()), Mockito.eq(3));
+	}
+	
+	@Test
+	@DisplayName("Deve buscar livros pelo texto do título e do autor")
+	public void searchBooksTest() throws Exception {
+		
+		Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+		
+		BDDMockito.given(service.search(Mockito.eq("aven artur"), Mockito.any(Pageable.class)))
+					.willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/search?q=aven artur&page=0&size=10"))
+				.accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[0].title").value("As aventuras"))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(1));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar erro ao informar um cursor inválido")
+	public void findBooksWithInvalidCursorTest() throws Exception {
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?after=inv@lido")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isBadRequest())
+			.andExpect(MockMvcResultMatchers.jsonPath("errors[0]").value("Invalid cursor"));
+	}
+		
+	@Test
+	@DisplayName("Deve importar livros de um array JSON informando o resultado de cada linha")
+	public void importBooksTest() throws Exception {
+		// Cenário
+		List<String> books = Arrays.asList(
+				"{\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}",
+				"{\"title\":\"Outras aventuras\",\"author\":\"Artur\",\"isbn\":\"002\"}",
+				"{\"author\":\"Artur\",\"isbn\":\"003\"}",
+				"\"livro\"");
+		String json = "[" + String.join(",", books) + "]";
+		
+		// O isbn 002 já está cadastrado
+		BDDMockito.given(service.importBooks(Mockito.anyList())).willAnswer(invocation -> {
+			List<Book> chunk = invocation.getArgument(0);
+			return chunk.stream()
+					.filter(book -> !book.getIsbn().equals("002"))
+					.peek(book -> book.setId(10l))
+					.collect(Collectors.toList());
+		});
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/import"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		// Execução
+		String content = mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andReturn().getResponse().getContentAsString();
+		
+		// Verificação
+		List<JsonNode> results = readLines(content);
+		Assertions.assertThat(results).hasSize(4);
+		Assertions.assertThat(results.get(0).get("status").asText()).isEqualTo("ACCEPTED");
+		Assertions.assertThat(results.get(0).get("id").asLong()).isEqualTo(10l);
+		Assertions.assertThat(results.get(1).get("status").asText()).isEqualTo("REJECTED");
+		Assertions.assertThat(results.get(1).get("errors").get(0).asText()).isEqualTo("Isbn já cadastrado.");
+		Assertions.assertThat(results.get(2).get("status").asText()).isEqualTo("REJECTED");
+		Assertions.assertThat(results.get(2).get("isbn").asText()).isEqualTo("003");
+		Assertions.assertThat(results.get(2).get("errors").get(0).asText()).startsWith("title");
+		Assertions.assertThat(results.get(3).get("row").asInt()).isEqualTo(4);
+		Assertions.assertThat(results.get(3).get("status").asText()).isEqualTo("REJECTED");
+		Mockito.verify(service, Mockito.times(1)).importBooks(Mockito.anyList());
+	}
+	
+	@Test
+	@DisplayName("Deve importar livros em NDJSON até encontrar um erro de sintaxe")
+	public void importBooksNdjsonTest() throws Exception {
+		String ndjson = "{\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n{\"title\": ";
+		BDDMockito.given(service.importBooks(Mockito.anyList())).willAnswer(invocation -> invocation.getArgument(0));
+		
+		String content = mvc.perform(MockMvcRequestBuilders
+				.post(BOOK_API.concat("/import"))
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.content(ndjson))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		
+		List<JsonNode> results = readLines(content);
+		Assertions.assertThat(results).hasSize(2);
+		Assertions.assertThat(results.get(0).get("status").asText()).isEqualTo("ACCEPTED");
+		Assertions.assertThat(results.get(1).get("row").asInt()).isEqualTo(2);
+		Assertions.assertThat(results.get(1).get("errors").get(0).asText()).startsWith("Invalid JSON");
+	}
+	
+	@Test
+	@DisplayName("Deve gravar o bloco quando as linhas rejeitadas completam o tamanho do bloco")
+	public void importBooksRejectedChunkTest() throws Exception {
+		// Cenário
+		// Um livro válido, 499 inválidos (500 linhas pendentes) e outro livro válido
+		StringBuilder ndjson = new StringBuilder("{\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n");
+		for (int i = 0; i < 499; i++) {
+			ndjson.append("{\"author\":\"Artur\",\"isbn\":\"x").append(i).append("\"}\n");
+		}
+		ndjson.append("{\"title\":\"Outras aventuras\",\"author\":\"Artur\",\"isbn\":\"002\"}\n");
+		BDDMockito.given(service.importBooks(Mockito.anyList())).willAnswer(invocation -> invocation.getArgument(0));
+		
+		// Execução
+		String content = mvc.perform(MockMvcRequestBuilders
+				.post(BOOK_API.concat("/import"))
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.content(ndjson.toString()))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		
+		// Verificação
+		List<JsonNode> results = readLines(content);
+		Assertions.assertThat(results).hasSize(501);
+		Assertions.assertThat(results.get(0).get("status").asText()).isEqualTo("ACCEPTED");
+		Assertions.assertThat(results.get(500).get("status").asText()).isEqualTo("ACCEPTED");
+		Mockito.verify(service, Mockito.times(2)).importBooks(Mockito.anyList());
+	}
+	
+	private List<JsonNode> readLines(String ndjson) throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		List<JsonNode> lines = new ArrayList<>();
+		for(String line : ndjson.split("\n")) {
+			lines.add(mapper.readTree(line));
+		}
+		return lines;
+	}
+	
 	private BookDTO createNewBook() {
 		return BookDTO.builder().author("Artur").title("As aventuras").isbn("001").build();
 	}
@@ -0,0 +1,80 @@
+package com.gustavo.libraryapi.api.resource;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+// Importa livros de ponta a ponta (H2) e confere pelas estatísticas do Hibernate que os inserts são feitos em lote
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class BookImportTest {
+	
+	static final int BOOKS = 1000;
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	BookRepository repository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	@AfterEach
+	public void tearDown() {
+		repository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve importar os livros com inserts em lote e rejeitar os isbns já cadastrados")
+	public void importBooksTest() throws Exception {
+		// Cenário
+		// Os isbns importados são normalizados (sem hífen e em caixa alta)
+		repository.save(Book.builder().title("Livro").author("Fulano").isbn("ISBN0").build());
+		StringBuilder ndjson = new StringBuilder();
+		for (int i = 0; i < BOOKS; i++) {
+			ndjson.append("{\"title\":\"Livro ").append(i).append("\",\"author\":\"Fulano\",\"isbn\":\"isbn-").append(i).append("\"}\n");
+		}
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		// Execução
+		String content = mvc.perform(MockMvcRequestBuilders.post("/api/books/import")
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.content(ndjson.toString()))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		
+		// Verificação
+		String[] lines = content.split("\n");
+		Assertions.assertThat(lines).hasSize(BOOKS);
+		Assertions.assertThat(lines[0]).contains("REJECTED");
+		Assertions.assertThat(lines[BOOKS - 1]).contains("ACCEPTED");
+		Assertions.assertThat(repository.count()).isEqualTo(BOOKS);
+		
+		// 2 blocos de 500: select dos isbns + inserts em lotes de 50 + sequence (50 ids por chamada) em cada bloco
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isLessThan(BOOKS / 10);
+		Assertions.assertThat(statistics.getEntityInsertCount()).isEqualTo(BOOKS - 1);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.util.Arrays;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+// O índice de busca acompanha as gravações feitas pelo JPA e só muda depois do commit
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class BookSearchTest {
+
+	static final String SEARCH_API = "/api/books/search";
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookRepository bookRepository;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	Book adventures;
+
+	@BeforeEach
+	public void setUp() {
+		adventures = Book.builder().title("As Aventuras de Artur").author("Fulano").isbn("001").build();
+		bookRepository.saveAll(Arrays.asList(adventures,
+				Book.builder().title("Contos").author("Artur Azevedo").isbn("002").build(),
+				Book.builder().title("Memórias Póstumas").author("Machado de Assis").isbn("003").build()));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		bookRepository.deleteAll();
+	}
+
+	@Test
+	@DisplayName("Deve buscar por prefixo ignorando maiúsculas e acentos, com o título antes do autor")
+	public void searchTest() throws Exception {
+		search("artu")
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(2)))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[0].isbn").value("001"))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[1].isbn").value("002"))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(2));
+
+		search("memorias POST")
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[0].isbn").value("003"));
+
+		search("machado contos")
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.empty()));
+	}
+
+	@Test
+	@DisplayName("Deve atualizar o índice ao alterar e excluir livros")
+	public void syncTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.put("/api/books/" + adventures.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"title\":\"Viagens\",\"author\":\"Fulano\",\"isbn\":\"001\"}"))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+
+		search("aventuras").andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.empty()));
+		search("viagens").andExpect(MockMvcResultMatchers.jsonPath("content[0].isbn").value("001"));
+
+		mvc.perform(MockMvcRequestBuilders.delete("/api/books/" + adventures.getId()))
+			.andExpect(MockMvcResultMatchers.status().isNoContent());
+
+		search("viagens").andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.empty()));
+	}
+
+	@Test
+	@DisplayName("Não deve indexar livros de uma transação desfeita")
+	public void rollbackTest() throws Exception {
+		transactionTemplate.executeWithoutResult(status -> {
+			bookRepository.save(Book.builder().title("Dom Casmurro").author("Machado de Assis").isbn("004").build());
+			status.setRollbackOnly();
+		});
+
+		search("casmurro").andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.empty()));
+	}
+
+	private ResultActions search(String text) throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get(SEARCH_API).param("q", text).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+	}
+
+}
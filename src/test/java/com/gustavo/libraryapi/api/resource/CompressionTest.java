@@ -0,0 +1,98 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+// A compressão é feita pelo Tomcat, por isso o teste sobe o servidor (o MockMvc não passa por ela)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CompressionTest {
+	
+	@LocalServerPort
+	int port;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	ObjectMapper objectMapper;
+	
+	HttpClient client = HttpClient.newHttpClient();
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() {
+		bookRepository.saveAll(IntStream.range(0, 50)
+				.mapToObj(i -> Book.builder().title("As aventuras " + i).author("Fulano").isbn("00" + i).build())
+				.collect(Collectors.toList()));
+		book = bookRepository.findByIsbn("001").get();
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve comprimir a página de livros com gzip mantendo o ETag fraco")
+	public void compressedPageTest() throws Exception {
+		// Execução
+		HttpResponse<byte[]> response = get("/api/books?author=fulano&size=50");
+		
+		// Verificação
+		Assertions.assertThat(response.statusCode()).isEqualTo(200);
+		Assertions.assertThat(response.headers().firstValue("Content-Encoding")).hasValue("gzip");
+		Assertions.assertThat(response.headers().firstValue("ETag")).hasValueSatisfying(etag ->
+			Assertions.assertThat(etag).startsWith("W/"));
+		
+		JsonNode page = objectMapper.readTree(new GZIPInputStream(new ByteArrayInputStream(response.body())));
+		Assertions.assertThat(page.get("content")).hasSize(50);
+		Assertions.assertThat(page.get("totalElements").asLong()).isEqualTo(50);
+		Assertions.assertThat(page.has("pageable")).isFalse();
+		Assertions.assertThat(page.has("sort")).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Não deve comprimir respostas abaixo do tamanho mínimo")
+	public void smallResponseTest() throws Exception {
+		HttpResponse<byte[]> response = get("/api/books/" + book.getId());
+		
+		Assertions.assertThat(response.statusCode()).isEqualTo(200);
+		Assertions.assertThat(response.headers().firstValue("Content-Encoding")).isEmpty();
+		Assertions.assertThat(objectMapper.readTree(response.body()).get("isbn").asText()).isEqualTo("001");
+	}
+	
+	private HttpResponse<byte[]> get(String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+				.header("Accept", "application/json")
+				.header("Accept-Encoding", "gzip")
+				.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+}
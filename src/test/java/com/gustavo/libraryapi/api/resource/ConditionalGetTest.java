@@ -0,0 +1,149 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.time.LocalDate;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.LoanRepository;
+
+// ETags dos livros e das listagens: 304 enquanto nada muda, com no máximo a consulta de versão, e um novo ETag
+// depois das alterações feitas pelos updates diretos (sem merge)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class ConditionalGetTest {
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@Autowired
+	BookLoanStatisticsRepository statisticsRepository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	Statistics statistics;
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		
+		book = bookRepository.save(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+		statisticsRepository.registerLoan(book.getId(), LocalDate.now());
+		loanRepository.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		statisticsRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve responder not modified para o livro até ele ser alterado")
+	public void bookETagTest() throws Exception {
+		String url = "/api/books/" + book.getId();
+		String etag = etag(url);
+		
+		// Livro em cache: nenhum comando SQL
+		statistics.clear();
+		notModified(url, etag);
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isZero();
+		
+		updateBook();
+		
+		Assertions.assertThat(modified(url, etag)).isNotEqualTo(etag);
+	}
+	
+	@Test
+	@DisplayName("Deve responder not modified para a listagem de livros apenas com a consulta de versão")
+	public void findBooksETagTest() throws Exception {
+		// O livro emprestado também faz parte do resultado
+		mvc.perform(MockMvcRequestBuilders.get("/api/books?author=fulano").accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(1));
+		
+		String url = "/api/books?author=fulano&page=0&size=10";
+		String etag = etag(url);
+		
+		statistics.clear();
+		notModified(url, etag);
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		
+		updateBook();
+		
+		Assertions.assertThat(modified(url, etag)).isNotEqualTo(etag);
+	}
+	
+	@Test
+	@DisplayName("Deve mudar o ETag da listagem de empréstimos quando o livro do empréstimo é alterado")
+	public void findLoansETagTest() throws Exception {
+		String url = "/api/loans?customer=Fulano&page=0&size=10";
+		String etag = etag(url);
+		
+		statistics.clear();
+		notModified(url, etag);
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		
+		// O título do livro faz parte da resposta
+		updateBook();
+		
+		Assertions.assertThat(modified(url, etag)).isNotEqualTo(etag);
+	}
+	
+	private void updateBook() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.put("/api/books/" + book.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"title\":\"Novas aventuras\",\"author\":\"Fulano\",\"isbn\":\"001\"}"))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+	}
+	
+	private String etag(String url) throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get(url).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andReturn().getResponse().getHeader("ETag");
+	}
+	
+	private void notModified(String url, String etag) throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get(url).header("If-None-Match", etag).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isNotModified());
+	}
+	
+	private String modified(String url, String etag) throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get(url).header("If-None-Match", etag).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andReturn().getResponse().getHeader("ETag");
+	}
+	
+}
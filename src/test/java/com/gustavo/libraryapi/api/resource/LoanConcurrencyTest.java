@@ -0,0 +1,143 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.BookLoanStatistics;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.LoanRepository;
+
+// Várias threads criando empréstimos dos mesmos livros ao mesmo tempo: cada livro deve terminar com no máximo um
+// empréstimo em aberto e as demais requisições devem ser recusadas com erro de negócio
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class LoanConcurrencyTest {
+	
+	static final int BOOKS = 5;
+	static final int THREADS = 16;
+	static final int REQUESTS_PER_THREAD = 25;
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@Autowired
+	BookLoanStatisticsRepository statisticsRepository;
+	
+	List<Book> books;
+	
+	@BeforeEach
+	public void setUp() {
+		books = new ArrayList<>();
+		for (int i = 0; i < BOOKS; i++) {
+			books.add(Book.builder().title("Livro " + i).author("Fulano").isbn("CONCORRENCIA" + i).build());
+		}
+		bookRepository.saveAll(books);
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		statisticsRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve criar no máximo um empréstimo em aberto por livro com requisições simultâneas")
+	public void concurrentLoansTest() throws Exception {
+		// Cenário
+		Map<Integer, AtomicInteger> statuses = new ConcurrentHashMap<>();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			int thread = t;
+			futures.add(executor.submit((Callable<Void>) () -> {
+				start.await();
+				for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+					Book book = books.get((thread + i) % BOOKS);
+					String json = "{\"isbn\":\"" + book.getIsbn() + "\",\"customer\":\"Cliente " + thread + "\",\"email\":\"cliente@email.com\"}";
+					int status = mvc.perform(MockMvcRequestBuilders.post("/api/loans")
+							.contentType(MediaType.APPLICATION_JSON)
+							.content(json))
+						.andReturn().getResponse().getStatus();
+					statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+				}
+				return null;
+			}));
+		}
+		
+		// Execução
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		
+		// Verificação
+		Map<Long, Long> openLoansByBook = loanRepository.findAll().stream()
+				.filter(loan -> !loan.getReturned())
+				.collect(Collectors.groupingBy(loan -> loan.getBook().getId(), Collectors.counting()));
+		
+		Assertions.assertThat(openLoansByBook).hasSize(BOOKS);
+		Assertions.assertThat(openLoansByBook.values()).allMatch(count -> count == 1);
+		Assertions.assertThat(statuses.keySet()).containsOnly(201, 400);
+		Assertions.assertThat(statuses.get(201).get()).isEqualTo(BOOKS);
+		Assertions.assertThat(statuses.get(400).get()).isEqualTo(THREADS * REQUESTS_PER_THREAD - BOOKS);
+		Assertions.assertThat(statisticsRepository.findAll()).hasSize(BOOKS).allMatch(BookLoanStatistics::getLoaned);
+	}
+	
+	@Test
+	@DisplayName("Deve permitir um novo empréstimo do livro somente depois da devolução")
+	public void loanAfterReturnTest() throws Exception {
+		Book book = books.get(0);
+		String json = "{\"isbn\":\"" + book.getIsbn() + "\",\"customer\":\"Fulano\",\"email\":\"fulano@email.com\"}";
+		
+		String id = mvc.perform(MockMvcRequestBuilders.post("/api/loans").contentType(MediaType.APPLICATION_JSON).content(json))
+				.andReturn().getResponse().getContentAsString();
+		int again = mvc.perform(MockMvcRequestBuilders.post("/api/loans").contentType(MediaType.APPLICATION_JSON).content(json))
+				.andReturn().getResponse().getStatus();
+		mvc.perform(MockMvcRequestBuilders.patch("/api/loans/" + id).contentType(MediaType.APPLICATION_JSON).content("{\"returned\":true}"));
+		int afterReturn = mvc.perform(MockMvcRequestBuilders.post("/api/loans").contentType(MediaType.APPLICATION_JSON).content(json))
+				.andReturn().getResponse().getStatus();
+		
+		Assertions.assertThat(again).isEqualTo(400);
+		Assertions.assertThat(afterReturn).isEqualTo(201);
+		Assertions.assertThat(loanRepository.findAll()).filteredOn(loan -> !loan.getReturned()).hasSize(1);
+	}
+
+}
@@ -2,8 +2,11 @@ package com.gustavo.libraryapi.api.resource;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import org.assertj.core.api.Assertions;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,6 +17,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -25,14 +29,23 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.gustavo.libraryapi.api.dto.LoanDTO;
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
 import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnResultDTO;
+import com.gustavo.libraryapi.api.dto.PageCursor;
+import com.gustavo.libraryapi.api.dto.PageDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.api.dto.ReturnedLoanDTO;
 import com.gustavo.libraryapi.exception.BusinessException;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
 import com.gustavo.libraryapi.service.BookService;
+import com.gustavo.libraryapi.service.CountMode;
 import com.gustavo.libraryapi.service.LoanService;
 
 @ExtendWith(SpringExtension.class)
@@ -118,14 +131,31 @@ public class LoanControllerTest {
 				.andExpect(MockMvcResultMatchers.jsonPath("errors[0]").value("Book already loaned"));
 	}
 	
+	@Test
+	@DisplayName("Deve retornar conflito quando o empréstimo não conseguir o lock do livro a tempo")
+	public void lockFailureOnCreateLoanTest() throws Exception {
+		LoanDTO dto = LoanDTO.builder().isbn("123").customer("Fulano").build();
+		String json = new ObjectMapper().writeValueAsString(dto);
+		
+		Book book = Book.builder().id(1l).isbn("123").build();
+		BDDMockito.given(bookService.getBookByIsbn("123")).willReturn(Optional.of(book));
+		BDDMockito.given(loanService.save(Mockito.any(Loan.class))).willThrow(new CannotAcquireLockException("Timeout trying to lock table"));
+		
+		mvc.perform(MockMvcRequestBuilders.post(LOAN_API)
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect(MockMvcResultMatchers.status().isConflict())
+			.andExpect(MockMvcResultMatchers.jsonPath("errors[0]").value("Concurrent update, try again"));
+	}
+	
 	@Test
 	@DisplayName("Deve retornar um livro")
 	public void returnBookTest() throws Exception {
 		// Cenário ( returned: true )
 		ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
-		Loan loan = Loan.builder().id(1l).build();
-		BDDMockito.given(loanService.getById(Mockito.anyLong()))
-				.willReturn(Optional.of(loan));
+		BDDMockito.given(loanService.returnAll(Collections.singletonList(1l), Collections.emptyList()))
+				.willReturn(Arrays.asList(new LoanReturnResultDTO(1l, "123", LoanReturnResultDTO.Status.RETURNED)));
 		
 		String json = new ObjectMapper().writeValueAsString(dto);
 		
@@ -136,8 +166,66 @@ public class LoanControllerTest {
 				.content(json)
 		).andExpect(MockMvcResultMatchers.status().isOk());
 		
-		Mockito.verify(loanService, Mockito.times(1)).update(loan);
+		// Update direcionado pelo id, sem carregar o empréstimo
+		Mockito.verify(loanService, Mockito.never()).getById(Mockito.anyLong());
+		Mockito.verify(loanService, Mockito.never()).update(Mockito.any());
+		
+	}
+	
+	@Test
+	@DisplayName("Deve reabrir um empréstimo")
+	public void reopenLoanTest() throws Exception {
+		Loan loan = Loan.builder().id(1l).returned(true).build();
+		BDDMockito.given(loanService.getById(1l)).willReturn(Optional.of(loan));
+		
+		String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(false).build());
+		
+		mvc.perform(MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect(MockMvcResultMatchers.status().isOk());
 		
+		Assertions.assertThat(loan.getReturned()).isFalse();
+		Mockito.verify(loanService).update(loan);
+	}
+	
+	@Test
+	@DisplayName("Deve devolver livros em lote informando o resultado de cada item")
+	public void returnBooksTest() throws Exception {
+		// Cenário
+		BDDMockito.given(loanService.returnAll(Arrays.asList(1l, 2l), Arrays.asList("123")))
+			.willReturn(Arrays.asList(new LoanReturnResultDTO(1l, "456", LoanReturnResultDTO.Status.RETURNED),
+					new LoanReturnResultDTO(2l, null, LoanReturnResultDTO.Status.NOT_FOUND),
+					new LoanReturnResultDTO(3l, "123", LoanReturnResultDTO.Status.RETURNED)));
+		
+		String json = new ObjectMapper().writeValueAsString(new LoanReturnDTO(Arrays.asList(1l, 2l), Arrays.asList("123")));
+		
+		// Execução e verificação
+		mvc.perform(MockMvcRequestBuilders.post(LOAN_API.concat("/returns"))
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("$", Matchers.hasSize(3)))
+			.andExpect(MockMvcResultMatchers.jsonPath("[0].status").value("RETURNED"))
+			.andExpect(MockMvcResultMatchers.jsonPath("[1].status").value("NOT_FOUND"))
+			.andExpect(MockMvcResultMatchers.jsonPath("[1].isbn").doesNotExist())
+			.andExpect(MockMvcResultMatchers.jsonPath("[2].id").value(3));
+		
+		Mockito.verify(loanService, Mockito.never()).update(Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve retornar erro ao devolver mais livros em lote do que o limite")
+	public void returnBooksAboveLimitTest() throws Exception {
+		String json = new ObjectMapper().writeValueAsString(new LoanReturnDTO(Collections.nCopies(1001, 1l), null));
+		
+		mvc.perform(MockMvcRequestBuilders.post(LOAN_API.concat("/returns"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect(MockMvcResultMatchers.status().isBadRequest());
+		
+		Mockito.verify(loanService, Mockito.never()).returnAll(Mockito.anyCollection(), Mockito.anyCollection());
 	}
 	
 	@Test
@@ -148,8 +236,8 @@ public class LoanControllerTest {
 		
 		String json = new ObjectMapper().writeValueAsString(dto);
 
-		BDDMockito.given(loanService.getById(Mockito.anyLong()))
-				.willReturn(Optional.empty());
+		BDDMockito.given(loanService.returnAll(Collections.singletonList(1l), Collections.emptyList()))
+				.willReturn(Arrays.asList(new LoanReturnResultDTO(1l, null, LoanReturnResultDTO.Status.NOT_FOUND)));
 		
 		mvc.perform(
 				MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
@@ -172,8 +260,10 @@ public class LoanControllerTest {
 		loan.setId(id);		
 		loan.setBook(book);
 				
-		BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
+		BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class), Mockito.any()))
 					.willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+		BDDMockito.given(loanService.findVersion(Mockito.any(LoanFilterDTO.class), Mockito.eq(CountMode.EXACT)))
+					.willReturn(Optional.of(new ResultVersionDTO(1l, 1l, 0l)));
 		
 		String queryString = String.format("?isbn=%s&customer=%s&page=0&size=10",
 				book.getIsbn(), loan.getCustomer());
@@ -183,11 +273,166 @@ public class LoanControllerTest {
 		
 		mvc.perform(request)
 			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.header().string("ETag", "W/\"1-1-0\""))
+			.andExpect(MockMvcResultMatchers.header().string("Cache-Control", "no-cache, private"))
 			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
 			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(1))
-			.andExpect(MockMvcResultMatchers.jsonPath("pageable.pageSize").value(10))
-			.andExpect(MockMvcResultMatchers.jsonPath("pageable.pageNumber").value(0));
+			.andExpect(MockMvcResultMatchers.jsonPath("size").value(10))
+			.andExpect(MockMvcResultMatchers.jsonPath("number").value(0));
+		
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar empréstimos em CBOR quando o cliente pedir application/cbor")
+	public void findLoansCborTest() throws Exception {
+		// Cenário
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setBook(Book.builder().id(1l).isbn("321").build());
+		
+		BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class), Mockito.any()))
+					.willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+		BDDMockito.given(loanService.findVersion(Mockito.any(LoanFilterDTO.class), Mockito.eq(CountMode.EXACT)))
+					.willReturn(Optional.of(new ResultVersionDTO(1l, 1l, 0l)));
+		
+		// Execução
+		byte[] cbor = mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("?isbn=321&page=0&size=10"))
+				.accept(MediaType.APPLICATION_CBOR))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_CBOR))
+			.andReturn().getResponse().getContentAsByteArray();
+		
+		// Verificação
+		PageDTO<LoanDTO> page = new CBORMapper().readValue(cbor, new TypeReference<PageDTO<LoanDTO>>() {});
+		Assertions.assertThat(page.getContent()).hasSize(1);
+		Assertions.assertThat(page.getContent().get(0).getBook().getIsbn()).isEqualTo("321");
+		Assertions.assertThat(page.getTotalElements()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Não deve retornar ETag nem not modified com o total em cache")
+	public void findLoansCachedCountTest() throws Exception {
+		// Cenário: o serviço devolve só a quantidade em cache, sem as somas
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setBook(Book.builder().id(1l).isbn("321").build());
+		BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class), Mockito.any()))
+					.willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+		BDDMockito.given(loanService.findVersion(Mockito.any(LoanFilterDTO.class), Mockito.eq(CountMode.CACHED)))
+					.willReturn(Optional.of(ResultVersionDTO.estimated(1l)));
+		
+		// Execução
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(LOAN_API.concat("?customer=Fulano&count=cached"))
+				.header("If-None-Match", "W/\"1-1-0\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		// Verificação
+		mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.header().doesNotExist("ETag"))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(1));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar not modified sem buscar a página quando a versão da listagem não mudou")
+	public void findLoansNotModifiedTest() throws Exception {
+		// Cenário
+		BDDMockito.given(loanService.findVersion(Mockito.any(LoanFilterDTO.class), Mockito.eq(CountMode.EXACT)))
+					.willReturn(Optional.of(new ResultVersionDTO(2l, 3l, 1l)));
+		
+		// Execução
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(LOAN_API.concat("?customer=Fulano&count=exact"))
+				.header("If-None-Match", "\"2-3-1\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		// Verificação
+		mvc.perform(request)
+			.andExpect(MockMvcResultMatchers.status().isNotModified())
+			.andExpect(MockMvcResultMatchers.header().string("Cache-Control", "no-cache, private"));
+		
+		Mockito.verify(loanService, Mockito.never()).find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class), Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar empréstimos usando cursor")
+	public void findLoansAfterCursorTest() throws Exception {
+		// Cenário
+		Book book = Book.builder().id(1l).isbn("321").build();
+		LocalDate loanDate = LocalDate.of(2021, 12, 1);
+		
+		Loan loan = createLoan();
+		loan.setId(5l);
+		loan.setBook(book);
+		loan.setLoanDate(loanDate);
+		
+		Loan older = createLoan();
+		older.setId(4l);
+		older.setBook(book);
 		
+		PageCursor cursor = new PageCursor("2021-12-02", 6l);
+		
+		BDDMockito.given(loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.any(Loan.class), Mockito.eq(2)))
+					.willReturn(Arrays.asList(loan, older));
+		
+		String queryString = String.format("?isbn=%s&size=1&after=%s", book.getIsbn(), cursor.encode());
+		
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat(queryString)).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[0].id").value(5))
+			.andExpect(MockMvcResultMatchers.jsonPath("content[0].book.isbn").value("321"))
+			.andExpect(MockMvcResultMatchers.jsonPath("next").value(new PageCursor("2021-12-01", 5l).encode()));
+		
+		Mockito.verify(loanService).findAfter(Mockito.any(LoanFilterDTO.class), 
+				Mockito.eq(Loan.builder().id(6l).loanDate(LocalDate.of(2021, 12, 2)).build()), Mockito.eq(2));
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos filtrados em NDJSON")
+	public void exportNdjsonTest() throws Exception {
+		mockExport(LoanExportDTO.builder().id(1l).isbn("123").customer("Fulano").email("fulano@email.com")
+				.loanDate(LocalDate.of(2021, 12, 1)).returned(false).build());
+		
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export?customer=Fulano&from=2021-12-01&to=2021-12-31")))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andExpect(MockMvcResultMatchers.content().string("{\"id\":1,\"isbn\":\"123\",\"customer\":\"Fulano\","
+					+ "\"email\":\"fulano@email.com\",\"loanDate\":\"2021-12-01\",\"returned\":false}\n"));
+		
+		Mockito.verify(loanService).export(Mockito.eq(LoanFilterDTO.builder().customer("Fulano").build()), 
+				Mockito.eq(LocalDate.of(2021, 12, 1)), Mockito.eq(LocalDate.of(2021, 12, 31)), Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em CSV escapando os valores com vírgula e aspas")
+	public void exportCsvTest() throws Exception {
+		mockExport(LoanExportDTO.builder().id(1l).isbn("123").customer("Silva, \"Fulano\"")
+				.loanDate(LocalDate.of(2021, 12, 1)).returned(true).build());
+		
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=csv")))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith("text/csv"))
+			.andExpect(MockMvcResultMatchers.content().string("id,isbn,customer,email,loanDate,returned\n"
+					+ "1,123,\"Silva, \"\"Fulano\"\"\",,2021-12-01,true\n"));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar erro ao exportar em um formato não suportado")
+	public void exportInvalidFormatTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=xml")))
+			.andExpect(MockMvcResultMatchers.status().isBadRequest());
+		
+		Mockito.verify(loanService, Mockito.never()).export(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void mockExport(LoanExportDTO... loans) {
+		BDDMockito.given(loanService.export(Mockito.any(LoanFilterDTO.class), Mockito.any(), Mockito.any(), Mockito.any()))
+			.willAnswer(invocation -> {
+				Consumer<LoanExportDTO> consumer = invocation.getArgument(3, Consumer.class);
+				Arrays.stream(loans).forEach(consumer);
+				return (long) loans.length;
+			});
 	}
 	
 	private Loan createLoan() {
@@ -0,0 +1,128 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.LoanRepository;
+
+// Conta os comandos SQL executados por requisição (estatísticas do Hibernate) para garantir que a listagem de
+// empréstimos não executa um select por livro (N+1) conforme o tamanho da página aumenta
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class LoanListingQueryCountTest {
+
+	static final int LOANS = 60;
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookRepository bookRepository;
+
+	@Autowired
+	LoanRepository loanRepository;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	Statistics statistics;
+
+	Book firstBook;
+
+	@BeforeEach
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		List<Book> books = new ArrayList<>();
+		List<Loan> loans = new ArrayList<>();
+		for (int i = 0; i < LOANS; i++) {
+			// Cada empréstimo com um livro diferente, o pior caso para o N+1
+			Book book = Book.builder().title("Livro " + i).author("Fulano").isbn("isbn-" + i).build();
+			books.add(book);
+			loans.add(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+		}
+		bookRepository.saveAll(books);
+		firstBook = books.get(0);
+		
+		// Mais empréstimos do mesmo livro para a listagem por livro
+		for (int i = 0; i < LOANS; i++) {
+			loans.add(Loan.builder().book(firstBook).customer("Ciclano").loanDate(LocalDate.now()).returned(true).build());
+		}
+		loanRepository.saveAll(loans);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+
+	@Test
+	@DisplayName("Deve executar a mesma quantidade de comandos SQL ao filtrar empréstimos independente do tamanho da página")
+	public void findLoansStatementCountTest() throws Exception {
+		long small = countStatements("/api/loans?customer=Fulano&page=0&size=5");
+		long large = countStatements("/api/loans?customer=Fulano&page=0&size=50");
+
+		// versão do resultado (ETag e total) + select da página (com os livros)
+		Assertions.assertThat(small).isEqualTo(2);
+		Assertions.assertThat(large).isEqualTo(small);
+	}
+
+	@Test
+	@DisplayName("Deve executar a mesma quantidade de comandos SQL ao buscar empréstimos por cursor independente do tamanho da página")
+	public void findLoansAfterStatementCountTest() throws Exception {
+		long small = countStatements("/api/loans?customer=Fulano&after=&size=5");
+		long large = countStatements("/api/loans?customer=Fulano&after=&size=50");
+
+		Assertions.assertThat(small).isEqualTo(1);
+		Assertions.assertThat(large).isEqualTo(small);
+	}
+
+	@Test
+	@DisplayName("Deve executar a mesma quantidade de comandos SQL ao listar empréstimos de um livro independente do tamanho da página")
+	public void loansByBookStatementCountTest() throws Exception {
+		String url = "/api/books/" + firstBook.getId() + "/loans?page=0&size=";
+		long small = countStatements(url + 5);
+		long large = countStatements(url + 50);
+
+		// select da página + count (o livro vem do cache de segundo nível do Hibernate)
+		Assertions.assertThat(small).isEqualTo(2);
+		Assertions.assertThat(large).isEqualTo(small);
+	}
+
+	private long countStatements(String url) throws Exception {
+		statistics.clear();
+
+		mvc.perform(MockMvcRequestBuilders.get(url).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+
+		return statistics.getPrepareStatementCount();
+	}
+
+}
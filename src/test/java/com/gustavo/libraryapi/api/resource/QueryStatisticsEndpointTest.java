@@ -0,0 +1,94 @@
+package com.gustavo.libraryapi.api.resource;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Comandos SQL medidos pelo proxy do DataSource em uma requisição real
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class QueryStatisticsEndpointTest {
+	
+	static final String QUERIES_API = "/actuator/queries";
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	MeterRegistry registry;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() throws Exception {
+		book = bookRepository.save(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+		// Sem o cache de segundo nível, para o livro ser lido do banco
+		entityManagerFactory.getCache().evictAll();
+		mvc.perform(MockMvcRequestBuilders.delete(QUERIES_API)).andExpect(MockMvcResultMatchers.status().isNoContent());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve listar os comandos SQL executados com o método do repositório que os chamou")
+	public void queriesTest() throws Exception {
+		// Cenário
+		double statements = statements().totalAmount();
+		long requests = statements().count();
+		
+		// Execução
+		mvc.perform(MockMvcRequestBuilders.get("/api/books/" + book.getId()).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+		
+		// Verificação
+		mvc.perform(MockMvcRequestBuilders.get(QUERIES_API))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("$", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("[0].sql", Matchers.containsString("from book")))
+			.andExpect(MockMvcResultMatchers.jsonPath("[0].calls").value(1))
+			.andExpect(MockMvcResultMatchers.jsonPath("[0].methods[0]").value("BookRepository.findById"));
+		
+		Assertions.assertThat(statements().count()).isEqualTo(requests + 1);
+		Assertions.assertThat(statements().totalAmount()).isEqualTo(statements + 1);
+		Assertions.assertThat(registry.get("library.jdbc.statements").tags("repository", "BookRepository", "method", "findById")
+				.timer().count()).isPositive();
+	}
+	
+	private DistributionSummary statements() {
+		return DistributionSummary.builder("library.request.statements").tags("uri", "/api/books/{id}", "method", "GET")
+				.register(registry);
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.LoanRepository;
+
+// Endpoints de leitura reativos (R2DBC) sobre os mesmos dados gravados pelo JPA
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ReactiveReadApiTest {
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() {
+		book = Book.builder().title("As aventuras").author("Artur").isbn("123").build();
+		Book other = Book.builder().title("Outro livro").author("Fulano").isbn("456").build();
+		bookRepository.saveAll(Arrays.asList(book, other));
+		
+		loanRepository.saveAll(Arrays.asList(
+				Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now().minusDays(1)).returned(true).build(),
+				Loan.builder().book(book).customer("Ciclano").customerEmail("ciclano@email.com").loanDate(LocalDate.now()).build()));
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve transmitir os livros filtrados em NDJSON")
+	public void findBooksTest() throws Exception {
+		// Execução
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/books?author=art")
+				.accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted())
+				.andReturn();
+		
+		// Verificação
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andExpect(MockMvcResultMatchers.content().string(
+					"{\"id\":" + book.getId() + ",\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"123\"}\n"));
+	}
+	
+	@Test
+	@DisplayName("Deve transmitir os empréstimos de um livro em NDJSON, mais recentes primeiro")
+	public void loansByBookTest() throws Exception {
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/books/" + book.getId() + "/loans")
+				.accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted())
+				.andReturn();
+		
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().string(Matchers.stringContainsInOrder(
+					"\"customer\":\"Ciclano\"", "\"email\":\"ciclano@email.com\"", "\n", 
+					"\"customer\":\"Fulano\"", "\n")));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar not found ao transmitir os empréstimos de um livro inexistente")
+	public void loansByInexistentBookTest() throws Exception {
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/books/" + (book.getId() + 1000) + "/loans")
+				.accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted())
+				.andReturn();
+		
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+			.andExpect(MockMvcResultMatchers.status().isNotFound());
+	}
+	
+	@Test
+	@DisplayName("Deve transmitir os empréstimos filtrados por isbn ou cliente em NDJSON")
+	public void findLoansTest() throws Exception {
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/loans?isbn=1-2-3")
+				.accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(MockMvcResultMatchers.request().asyncStarted())
+				.andReturn();
+		
+		mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.content().string(Matchers.stringContainsInOrder(
+					"\"isbn\":\"123\"", "\"customer\":\"Ciclano\"", "\n", "\"isbn\":\"123\"", "\"customer\":\"Fulano\"", "\n")));
+	}
+	
+	@Test
+	@DisplayName("Deve manter a listagem paginada em JSON quando o cliente não pede NDJSON")
+	public void findBooksJsonTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get("/api/books?author=art").accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+			.andExpect(MockMvcResultMatchers.jsonPath("totalElements").value(1));
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Métricas por endpoint, por consulta e por etapa registradas em uma requisição real
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class RequestMetricsTest {
+	
+	static final String URI = "/api/books/{id}";
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	MeterRegistry registry;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() {
+		book = bookRepository.save(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve medir o tempo de banco, mapeamento e serialização da requisição")
+	public void requestStagesTest() throws Exception {
+		// Cenário
+		long requests = stage("db").count();
+		long repositoryCalls = findByIdCalls();
+		
+		// Execução
+		mvc.perform(MockMvcRequestBuilders.get("/api/books/" + book.getId()).accept(MediaType.APPLICATION_JSON))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+		
+		// Verificação
+		Assertions.assertThat(stage("db").count()).isEqualTo(requests + 1);
+		Assertions.assertThat(stage("db").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+		Assertions.assertThat(stage("mapping").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+		Assertions.assertThat(stage("serialization").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+		
+		Assertions.assertThat(findByIdCalls()).isEqualTo(repositoryCalls + 1);
+		Assertions.assertThat(registry.get("library.mapping").tags("mapper", "BookMapper", "method", "toDTO").timer().count())
+				.isPositive();
+		Assertions.assertThat(registry.get("library.serialization").tags("type", "BookDTO").timer().count()).isPositive();
+		Assertions.assertThat(registry.get("http.server.requests").tags("uri", URI).timer().takeSnapshot().histogramCounts())
+				.isNotEmpty();
+	}
+	
+	private long findByIdCalls() {
+		Timer timer = registry.find("spring.data.repository.invocations")
+				.tags("repository", "BookRepository", "method", "findById").timer();
+		return timer == null ? 0 : timer.count();
+	}
+	
+	private Timer stage(String stage) {
+		Timer timer = registry.find("library.request.stage").tags("uri", URI, "method", "GET", "stage", stage).timer();
+		return timer != null ? timer : Timer.builder("library.request.stage").tags("uri", URI, "method", "GET", "stage", stage)
+				.register(registry);
+	}
+
+}
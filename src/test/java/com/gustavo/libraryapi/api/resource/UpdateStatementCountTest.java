@@ -0,0 +1,144 @@
+package com.gustavo.libraryapi.api.resource;
+
+import java.time.LocalDate;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.LoanRepository;
+import com.gustavo.libraryapi.service.BookService;
+
+// Comandos SQL das atualizações feitas pelo id: nenhum select da entidade antes do update (merge)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class UpdateStatementCountTest {
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@Autowired
+	BookService bookService;
+	
+	@Autowired
+	BookLoanStatisticsRepository statisticsRepository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	Statistics statistics;
+	
+	Book book;
+	
+	Loan loan;
+	
+	@BeforeEach
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		
+		book = bookRepository.save(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+		statisticsRepository.registerLoan(book.getId(), LocalDate.now());
+		loan = loanRepository.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		statisticsRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve atualizar um livro em cache com um único update, com a versão do livro lido")
+	public void updateBookStatementCountTest() throws Exception {
+		// Cenário: livro no cache de segundo nível desde o insert
+		statistics.clear();
+		
+		// Execução
+		mvc.perform(MockMvcRequestBuilders.put("/api/books/" + book.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"title\":\"Novas aventuras\",\"author\":\"Ciclano\",\"isbn\":\"001\"}"))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+		
+		// Verificação
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		Book updated = bookRepository.findById(book.getId()).get();
+		Assertions.assertThat(updated.getTitle()).isEqualTo("Novas aventuras");
+		Assertions.assertThat(updated.getAuthor()).isEqualTo("Ciclano");
+		Assertions.assertThat(updated.getIsbn()).isEqualTo("001");
+		Assertions.assertThat(updated.getVersion()).isEqualTo(book.getVersion() + 1);
+		Assertions.assertThat(bookRepository.findLoanStatisticsById(book.getId()).get().getLoaned()).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve ignorar o isbn informado ao atualizar um livro")
+	public void updateBookOtherIsbnTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.put("/api/books/" + book.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"title\":\"Novas aventuras\",\"author\":\"Ciclano\",\"isbn\":\"002\"}"))
+			.andExpect(MockMvcResultMatchers.status().isOk())
+			.andExpect(MockMvcResultMatchers.jsonPath("isbn").value("001"));
+		
+		Assertions.assertThat(bookRepository.findById(book.getId()).get().getTitle()).isEqualTo("Novas aventuras");
+	}
+	
+	@Test
+	@DisplayName("Deve recusar a atualização de um livro lido antes de outra atualização")
+	public void updateStaleBookTest() throws Exception {
+		Book stale = bookRepository.findById(book.getId()).get();
+		bookRepository.save(bookRepository.findById(book.getId()).get().toBuilder().title("Outras aventuras").build());
+		
+		stale.setTitle("Novas aventuras");
+		Throwable exception = Assertions.catchThrowable(() -> bookService.update(stale));
+		
+		Assertions.assertThat(exception).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+		Assertions.assertThat(bookRepository.findById(book.getId()).get().getTitle()).isEqualTo("Outras aventuras");
+	}
+	
+	@Test
+	@DisplayName("Deve devolver um empréstimo sem carregar a entidade")
+	public void returnLoanStatementCountTest() throws Exception {
+		statistics.clear();
+		
+		mvc.perform(MockMvcRequestBuilders.patch("/api/loans/" + loan.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"returned\":true}"))
+			.andExpect(MockMvcResultMatchers.status().isOk());
+		
+		// select das colunas do empréstimo em aberto + update do empréstimo + update das estatísticas do livro
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+		Assertions.assertThat(statistics.getEntityLoadCount()).isZero();
+		Assertions.assertThat(loanRepository.findById(loan.getId()).get().getReturned()).isTrue();
+		Assertions.assertThat(bookRepository.findLoanStatisticsById(book.getId()).get().getLoaned()).isFalse();
+	}
+	
+}
@@ -0,0 +1,45 @@
+package com.gustavo.libraryapi.config;
+
+import java.util.Collections;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ContentLengthJsonHttpMessageConverterTest {
+	
+	ContentLengthJsonHttpMessageConverter converter = new ContentLengthJsonHttpMessageConverter(new ObjectMapper(), 64);
+	
+	@Test
+	@DisplayName("Deve enviar o Content-Length nas respostas até o limite")
+	public void smallResponseTest() throws Exception {
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		
+		converter.write(Collections.singletonMap("isbn", "001"), MediaType.APPLICATION_JSON, message);
+		
+		Assertions.assertThat(message.getBodyAsString()).isEqualTo("{\"isbn\":\"001\"}");
+		Assertions.assertThat(message.getHeaders().getContentLength()).isEqualTo(message.getBodyAsBytes().length);
+	}
+	
+	@Test
+	@DisplayName("Deve enviar sem Content-Length as respostas acima do limite")
+	public void largeResponseTest() throws Exception {
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		String title = String.join("", Collections.nCopies(100, "a"));
+		
+		converter.write(Collections.singletonMap("title", title), MediaType.APPLICATION_JSON, message);
+		
+		Assertions.assertThat(message.getBodyAsString()).isEqualTo("{\"title\":\"" + title + "\"}");
+		Assertions.assertThat(message.getHeaders().getContentLength()).isEqualTo(-1);
+	}
+
+}
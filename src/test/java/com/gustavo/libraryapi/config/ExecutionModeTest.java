@@ -0,0 +1,48 @@
+package com.gustavo.libraryapi.config;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ExecutionModeTest {
+	
+	@Test
+	@DisplayName("Deve usar o modo platform quando configurado")
+	public void platformModeTest() {
+		Assertions.assertThat(ExecutionMode.resolve(" Platform ")).isEqualTo(ExecutionMode.PLATFORM);
+	}
+	
+	@Test
+	@DisplayName("Deve usar o modo async quando configurado")
+	public void asyncModeTest() {
+		Assertions.assertThat(ExecutionMode.resolve("async")).isEqualTo(ExecutionMode.ASYNC);
+	}
+	
+	@Test
+	@DisplayName("Deve usar virtual threads apenas quando a JVM tiver suporte e o modo async sem elas")
+	public void virtualModeTest() {
+		ExecutionMode mode = ExecutionMode.resolve("virtual");
+		
+		if(ExecutionMode.virtualThreadsAvailable()) {
+			Assertions.assertThat(mode).isEqualTo(ExecutionMode.VIRTUAL);
+			Assertions.assertThat(ExecutionMode.virtualThreadExecutor()).isPresent();
+		} else {
+			Assertions.assertThat(mode).isEqualTo(ExecutionMode.ASYNC);
+			Assertions.assertThat(ExecutionMode.virtualThreadExecutor()).isEmpty();
+		}
+	}
+	
+	@Test
+	@DisplayName("Deve recusar um modo desconhecido")
+	public void unknownModeTest() {
+		Throwable exception = Assertions.catchThrowable(() -> ExecutionMode.resolve("reactive"));
+		
+		Assertions.assertThat(exception).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
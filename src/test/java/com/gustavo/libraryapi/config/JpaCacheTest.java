@@ -0,0 +1,118 @@
+package com.gustavo.libraryapi.config;
+
+import java.time.LocalDate;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Cache de segundo nível do Hibernate: livros por id e consulta por isbn lidos sem comandos SQL enquanto a tabela
+// não muda, com as estatísticas das regiões no actuator
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class JpaCacheTest {
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	BookLoanStatisticsRepository statisticsRepository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	MeterRegistry registry;
+	
+	Statistics statistics;
+	
+	Book book;
+	
+	@BeforeEach
+	public void setUp() {
+		entityManagerFactory.getCache().evictAll();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		
+		book = bookRepository.save(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		statisticsRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve obter o livro por id do cache de segundo nível")
+	public void findByIdTest() {
+		// Cenário
+		double hits = gets(JpaCacheConfig.BOOK, "hit");
+		
+		// Execução
+		statistics.clear();
+		Book found = bookRepository.findById(book.getId()).get();
+		
+		// Verificação
+		Assertions.assertThat(found.getTitle()).isEqualTo("As aventuras");
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isZero();
+		Assertions.assertThat(statistics.getDomainDataRegionStatistics(JpaCacheConfig.BOOK).getHitCount()).isEqualTo(1);
+		Assertions.assertThat(gets(JpaCacheConfig.BOOK, "hit")).isEqualTo(hits + 1);
+	}
+	
+	@Test
+	@DisplayName("Deve obter o livro por isbn do cache de consultas até a tabela de livros ser alterada")
+	public void findByIsbnTest() {
+		// Cenário
+		bookRepository.findByIsbn("001");
+		
+		// Execução
+		statistics.clear();
+		Book cached = bookRepository.findByIsbn("001").get();
+		long cachedStatements = statistics.getPrepareStatementCount();
+		
+		// Os empréstimos alteram outra tabela e não invalidam a consulta em cache
+		statisticsRepository.registerLoan(book.getId(), LocalDate.now());
+		statistics.clear();
+		bookRepository.findByIsbn("001");
+		long loanedStatements = statistics.getPrepareStatementCount();
+		
+		book = bookRepository.findById(book.getId()).get();
+		book.setTitle("Outro título");
+		bookRepository.save(book);
+		statistics.clear();
+		Book updated = bookRepository.findByIsbn("001").get();
+		
+		// Verificação
+		Assertions.assertThat(cached.getId()).isEqualTo(book.getId());
+		Assertions.assertThat(cachedStatements).isZero();
+		Assertions.assertThat(loanedStatements).isZero();
+		Assertions.assertThat(updated.getTitle()).isEqualTo("Outro título");
+		Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		Assertions.assertThat(gets(JpaCacheConfig.BOOK_BY_ISBN, "hit")).isPositive();
+		Assertions.assertThat(gets(JpaCacheConfig.BOOK_BY_ISBN, "miss")).isPositive();
+	}
+	
+	private double gets(String region, String result) {
+		return registry.get("cache.gets").tags("cacheManager", "hibernate", "cache", region, "result", result)
+				.functionCounter().count();
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.gustavo.libraryapi.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class QueryStatisticsTest {
+	
+	QueryStatistics statistics;
+	
+	SimpleMeterRegistry registry;
+	
+	@BeforeEach
+	public void setUp() {
+		registry = new SimpleMeterRegistry();
+		statistics = new QueryStatistics(Duration.ofSeconds(1), 2);
+		statistics.bindTo(registry);
+	}
+	
+	@Test
+	@DisplayName("Deve listar os comandos pelo maior tempo total com os métodos que os executaram")
+	public void topTest() {
+		// Cenário
+		statistics.record("select a", "BookRepository.findById", TimeUnit.MILLISECONDS.toNanos(3));
+		statistics.record("select a", QueryStatistics.NONE, TimeUnit.MILLISECONDS.toNanos(5));
+		statistics.record("select b", "LoanRepository.findByBook", TimeUnit.MILLISECONDS.toNanos(4));
+		
+		// Execução
+		List<QueryStatistics.Summary> top = statistics.top(10);
+		
+		// Verificação
+		Assertions.assertThat(top).extracting(QueryStatistics.Summary::getSql).containsExactly("select a", "select b");
+		Assertions.assertThat(top.get(0).getCalls()).isEqualTo(2);
+		Assertions.assertThat(top.get(0).getTotalMillis()).isEqualTo(8);
+		Assertions.assertThat(top.get(0).getMeanMillis()).isEqualTo(4);
+		Assertions.assertThat(top.get(0).getMaxMillis()).isEqualTo(5);
+		Assertions.assertThat(top.get(0).getMethods()).containsExactly("BookRepository.findById", QueryStatistics.NONE);
+		Assertions.assertThat(statistics.top(1)).hasSize(1);
+		
+		Assertions.assertThat(registry.get("library.jdbc.statements").tags("repository", "BookRepository", "method", "findById")
+				.timer().count()).isEqualTo(1);
+		Assertions.assertThat(registry.get("library.jdbc.statements").tags("repository", QueryStatistics.NONE).timer()
+				.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(5);
+	}
+	
+	@Test
+	@DisplayName("Deve agrupar os comandos acima do limite de comandos distintos")
+	public void maxStatementsTest() {
+		statistics.record("select a", QueryStatistics.NONE, 1);
+		statistics.record("select b", QueryStatistics.NONE, 1);
+		statistics.record("select c", QueryStatistics.NONE, 1);
+		statistics.record("select d", QueryStatistics.NONE, 1);
+		statistics.record("select a", QueryStatistics.NONE, 1);
+		
+		Assertions.assertThat(statistics.top(10)).extracting(QueryStatistics.Summary::getSql)
+				.containsExactlyInAnyOrder("select a", "select b", QueryStatistics.OTHER);
+		Assertions.assertThat(statistics.top(10)).filteredOn(summary -> summary.getSql().equals(QueryStatistics.OTHER))
+				.extracting(QueryStatistics.Summary::getCalls).containsExactly(2L);
+		
+		statistics.reset();
+		
+		Assertions.assertThat(statistics.top(10)).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve informar o método de repositório em execução, incluindo chamadas aninhadas")
+	public void callerTest() {
+		String outer = statistics.enter("BookRepository.findById");
+		String inner = statistics.enter("LoanRepository.findByBook");
+		statistics.exit(inner);
+		
+		Assertions.assertThat(statistics.enter("x")).isEqualTo("BookRepository.findById");
+		statistics.exit(outer);
+		Assertions.assertThat(statistics.enter("y")).isNull();
+		statistics.exit(null);
+	}
+
+}
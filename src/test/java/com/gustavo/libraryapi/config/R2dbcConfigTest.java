@@ -0,0 +1,44 @@
+package com.gustavo.libraryapi.config;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.gustavo.libraryapi.model.repository.LoanReactiveRepository;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class R2dbcConfigTest {
+	
+	ApplicationContextRunner runner = new ApplicationContextRunner()
+			.withBean(DataSourceProperties.class)
+			.withUserConfiguration(R2dbcConfig.class, LoanReactiveRepository.class);
+	
+	@Test
+	@DisplayName("Deve criar o acesso reativo com o banco H2")
+	public void h2DatabaseTest() {
+		runner.withPropertyValues("spring.datasource.url=jdbc:h2:mem:library")
+			.run(context -> {
+				Assertions.assertThat(context).hasSingleBean(DatabaseClient.class);
+				Assertions.assertThat(context).hasSingleBean(LoanReactiveRepository.class);
+			});
+	}
+	
+	@Test
+	@DisplayName("Deve subir sem o acesso reativo com outro banco")
+	public void otherDatabaseTest() {
+		runner.withPropertyValues("spring.datasource.url=jdbc:postgresql://localhost/library")
+			.run(context -> {
+				Assertions.assertThat(context).hasNotFailed();
+				Assertions.assertThat(context).doesNotHaveBean(DatabaseClient.class);
+				Assertions.assertThat(context).doesNotHaveBean(LoanReactiveRepository.class);
+			});
+	}
+
+}
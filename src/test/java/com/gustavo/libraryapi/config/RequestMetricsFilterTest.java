@@ -0,0 +1,92 @@
+package com.gustavo.libraryapi.config;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class RequestMetricsFilterTest {
+	
+	SimpleMeterRegistry registry;
+	
+	MockHttpServletRequest request;
+	
+	@BeforeEach
+	public void setUp() {
+		registry = new SimpleMeterRegistry();
+		request = new MockHttpServletRequest("GET", "/api/books/1");
+	}
+	
+	@Test
+	@DisplayName("Deve registrar o tempo de cada etapa e os comandos SQL da requisição pelo padrão da rota")
+	public void recordStagesTest() throws Exception {
+		// Execução
+		new RequestMetricsFilter(registry, Duration.ofMinutes(1)).doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+			req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/books/{id}");
+			RequestTimings.add(RequestTimings.Stage.DB, TimeUnit.MILLISECONDS.toNanos(3));
+			RequestTimings.add(RequestTimings.Stage.DB, TimeUnit.MILLISECONDS.toNanos(2));
+			RequestTimings.add(RequestTimings.Stage.SERIALIZATION, TimeUnit.MILLISECONDS.toNanos(1));
+			RequestTimings.statementExecuted();
+			RequestTimings.statementExecuted();
+		});
+		
+		// Verificação
+		Assertions.assertThat(registry.get("library.request.stage").tags("uri", "/api/books/{id}", "stage", "db").timer()
+				.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(5);
+		Assertions.assertThat(registry.get("library.request.stage").tags("stage", "serialization").timer()
+				.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(1);
+		Assertions.assertThat(registry.get("library.request.stage").tags("stage", "mapping").timer().count()).isEqualTo(1);
+		Assertions.assertThat(registry.get("library.request.statements").tags("uri", "/api/books/{id}").summary()
+				.totalAmount()).isEqualTo(2);
+		Assertions.assertThat(registry.find("library.request.slo.breaches").counter()).isNull();
+	}
+	
+	@Test
+	@DisplayName("Deve somar só a chamada mais externa quando as chamadas medidas de uma etapa são aninhadas")
+	public void nestedStageTest() throws Exception {
+		// Execução
+		new RequestMetricsFilter(registry, Duration.ofMinutes(1)).doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+			RequestTimings.enter(RequestTimings.Stage.DB);
+			RequestTimings.enter(RequestTimings.Stage.DB);
+			RequestTimings.exit(RequestTimings.Stage.DB, TimeUnit.MILLISECONDS.toNanos(2));
+			RequestTimings.exit(RequestTimings.Stage.DB, TimeUnit.MILLISECONDS.toNanos(3));
+			RequestTimings.enter(RequestTimings.Stage.DB);
+			RequestTimings.exit(RequestTimings.Stage.DB, TimeUnit.MILLISECONDS.toNanos(1));
+		});
+		
+		// Verificação
+		Assertions.assertThat(registry.get("library.request.stage").tags("stage", "db").timer()
+				.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(4);
+	}
+	
+	@Test
+	@DisplayName("Deve contar a requisição acima do SLO")
+	public void sloBreachTest() throws Exception {
+		new RequestMetricsFilter(registry, Duration.ZERO).doFilter(request, new MockHttpServletResponse(), (req, res) -> {});
+		
+		Assertions.assertThat(registry.get("library.request.slo.breaches").tags("uri", "UNKNOWN", "method", "GET").counter()
+				.count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Não deve somar tempos fora de uma requisição")
+	public void outsideRequestTest() {
+		RequestTimings.add(RequestTimings.Stage.DB, 1);
+		
+		Assertions.assertThat(RequestTimings.stop()).isNull();
+	}
+
+}
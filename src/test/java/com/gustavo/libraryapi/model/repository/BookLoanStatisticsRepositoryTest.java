@@ -0,0 +1,132 @@
+package com.gustavo.libraryapi.model.repository;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.entity.BookLoanStatistics;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class BookLoanStatisticsRepositoryTest {
+	
+	@Autowired
+	TestEntityManager entityManager;
+	
+	@Autowired
+	BookLoanStatisticsRepository repository;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Test
+	@DisplayName("Deve criar as estatísticas no primeiro empréstimo e emprestar o livro apenas quando ele estiver disponível")
+	public void registerLoanTest() {
+		Book book = entityManager.persistFlushFind(createNewBook("123"));
+		
+		int first = repository.registerLoan(book.getId(), LocalDate.now());
+		int second = repository.registerLoan(book.getId(), LocalDate.now());
+		
+		Assertions.assertThat(first).isEqualTo(1);
+		Assertions.assertThat(second).isZero();
+		Assertions.assertThat(repository.findById(book.getId())).get().extracting(BookLoanStatistics::getLoaned).isEqualTo(true);
+	}
+	
+	@Test
+	@DisplayName("Não deve alterar a disponibilidade ao salvar o livro")
+	public void saveBookKeepsLoanedTest() {
+		Book book = entityManager.persistFlushFind(createNewBook("123"));
+		repository.registerLoan(book.getId(), LocalDate.now());
+		entityManager.clear();
+		
+		// Livro lido antes do empréstimo, salvo depois
+		book.setTitle("Outro título");
+		bookRepository.saveAndFlush(book);
+		entityManager.clear();
+		
+		Assertions.assertThat(entityManager.find(Book.class, book.getId()).getTitle()).isEqualTo("Outro título");
+		Assertions.assertThat(bookRepository.findLoanStatisticsById(book.getId()).get().getLoaned()).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve atualizar as estatísticas de empréstimo do livro a cada empréstimo e devolução")
+	public void loanStatisticsTest() {
+		// Cenário
+		Book book = entityManager.persistFlushFind(createNewBook("123"));
+		LocalDate today = LocalDate.now();
+		
+		// Execução
+		repository.registerLoan(book.getId(), today.minusDays(10));
+		repository.markReturned(book.getId(), 4);
+		repository.markReturned(book.getId(), 4);
+		repository.registerLoan(book.getId(), today.minusDays(2));
+		repository.markReturned(book.getId(), 2);
+		int loanedAgain = repository.registerLoan(book.getId(), today);
+		int alreadyLoaned = repository.registerLoan(book.getId(), today);
+		
+		// Verificação
+		BookLoanStatisticsDTO statistics = bookRepository.findLoanStatisticsById(book.getId()).get();
+		Assertions.assertThat(loanedAgain).isEqualTo(1);
+		Assertions.assertThat(alreadyLoaned).isZero();
+		Assertions.assertThat(statistics.getTotalLoans()).isEqualTo(3);
+		Assertions.assertThat(statistics.getLoaned()).isTrue();
+		Assertions.assertThat(statistics.getLastLoanDate()).isEqualTo(today);
+		Assertions.assertThat(statistics.getAverageLoanDays()).isEqualTo(3);
+	}
+	
+	@Test
+	@DisplayName("Deve desfazer a devolução nas estatísticas ao reabrir o empréstimo de um livro disponível")
+	public void reopenLoanTest() {
+		// Cenário
+		Book book = entityManager.persistFlushFind(createNewBook("123"));
+		LocalDate today = LocalDate.now();
+		repository.registerLoan(book.getId(), today.minusDays(10));
+		repository.markReturned(book.getId(), 4);
+		repository.registerLoan(book.getId(), today.minusDays(2));
+		repository.markReturned(book.getId(), 2);
+		
+		// Execução
+		int reopened = repository.reopenLoan(book.getId(), 2);
+		int alreadyLoaned = repository.reopenLoan(book.getId(), 2);
+		
+		// Verificação
+		BookLoanStatisticsDTO statistics = bookRepository.findLoanStatisticsById(book.getId()).get();
+		Assertions.assertThat(reopened).isEqualTo(1);
+		Assertions.assertThat(alreadyLoaned).isZero();
+		Assertions.assertThat(statistics.getTotalLoans()).isEqualTo(2);
+		Assertions.assertThat(statistics.getLoaned()).isTrue();
+		Assertions.assertThat(statistics.getAverageLoanDays()).isEqualTo(4);
+	}
+	
+	@Test
+	@DisplayName("Deve devolver os livros emprestados em lote somando a duração nas estatísticas")
+	public void markAllReturnedTest() {
+		Book loaned = entityManager.persistFlushFind(createNewBook("123"));
+		Book available = entityManager.persistFlushFind(createNewBook("456"));
+		repository.registerLoan(loaned.getId(), LocalDate.now());
+		
+		int updated = repository.markAllReturned(Arrays.asList(loaned.getId(), available.getId()), 5);
+		
+		Assertions.assertThat(updated).isEqualTo(1);
+		Assertions.assertThat(bookRepository.findLoanStatisticsById(loaned.getId()).get().getAverageLoanDays()).isEqualTo(5);
+		Assertions.assertThat(bookRepository.findLoanStatisticsById(loaned.getId()).get().getLoaned()).isFalse();
+		Assertions.assertThat(bookRepository.findLoanStatisticsById(available.getId()).get().getAverageLoanDays()).isNull();
+	}
+	
+	private Book createNewBook(String isbn) {
+		return Book.builder().title("Aventuras").author("Fulano").isbn(isbn).build();
+	}
+
+}
@@ -1,17 +1,29 @@
 package com.gustavo.libraryapi.model.repository;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.model.entity.Book;
 
 @ExtendWith(SpringExtension.class)
@@ -97,6 +109,142 @@ public class BookRepositoryTest {
 		Assertions.assertThat(deletedBook).isNull();
 	}
 	
+	@Test
+	@DisplayName("Deve buscar livros a partir do último registro da página anterior")
+	public void findPageAfterTest() {
+		Book first = Book.builder().title("Aventuras").author("Fulano").isbn("1").build();
+		Book second = Book.builder().title("Aventuras").author("Fulano").isbn("2").build();
+		Book third = Book.builder().title("Contos").author("Fulano").isbn("3").build();
+		Book other = Book.builder().title("Contos").author("Ciclano").isbn("4").build();
+		entityManager.persist(third);
+		entityManager.persist(first);
+		entityManager.persist(second);
+		entityManager.persist(other);
+		
+		List<Book> firstPage = repository.findFirstPage(null, "fula", null, PageRequest.of(0, 2));
+		Book last = firstPage.get(1);
+		List<Book> secondPage = repository.findPageAfter(null, "fula", null, last.getTitle(), last.getId(), PageRequest.of(0, 2));
+		
+		Assertions.assertThat(firstPage).containsExactly(first, second);
+		Assertions.assertThat(secondPage).containsExactly(third);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar apenas os isbns já cadastrados")
+	public void findExistingIsbnsTest() {
+		entityManager.persist(createNewBook("1"));
+		entityManager.persist(createNewBook("2"));
+		
+		Set<String> existing = repository.findExistingIsbns(Arrays.asList("1", "2", "3"));
+		
+		Assertions.assertThat(existing).containsExactlyInAnyOrder("1", "2");
+	}
+	
+	@Test
+	@DisplayName("Deve inserir os livros em lote e desanexá-los do contexto de persistência")
+	public void insertAllTest() {
+		List<Book> books = Arrays.asList(createNewBook("1"), createNewBook("2"));
+		
+		List<Book> saved = repository.insertAll(books);
+		
+		Assertions.assertThat(saved).allMatch(book -> book.getId() != null);
+		Assertions.assertThat(saved).noneMatch(entityManager.getEntityManager()::contains);
+		Assertions.assertThat(repository.findExistingIsbns(Arrays.asList("1", "2"))).hasSize(2);
+	}
+	
+	@Test
+	@DisplayName("Deve rejeitar no banco um livro com isbn já cadastrado")
+	public void uniqueIsbnTest() {
+		repository.saveAndFlush(createNewBook("123"));
+		
+		Throwable exception = Assertions.catchThrowable(() -> repository.saveAndFlush(createNewBook("123")));
+		
+		Assertions.assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+		Assertions.assertThat(((ConstraintViolationException) exception.getCause()).getConstraintName())
+			.containsIgnoringCase(Book.ISBN_INDEX);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar estatísticas zeradas para um livro nunca emprestado")
+	public void emptyLoanStatisticsTest() {
+		Book book = entityManager.persistFlushFind(createNewBook("123"));
+		
+		BookLoanStatisticsDTO statistics = repository.findLoanStatisticsById(book.getId()).get();
+		
+		Assertions.assertThat(statistics.getTotalLoans()).isZero();
+		Assertions.assertThat(statistics.getLoaned()).isFalse();
+		Assertions.assertThat(statistics.getLastLoanDate()).isNull();
+		Assertions.assertThat(statistics.getAverageLoanDays()).isNull();
+		Assertions.assertThat(repository.findLoanStatisticsById(book.getId() + 1)).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve buscar a página sem count e a versão do resultado com o mesmo exemplo")
+	public void findSliceAndVersionTest() {
+		// Cenário
+		Book first = entityManager.persistFlushFind(createNewBook("123"));
+		Book second = entityManager.persistFlushFind(createNewBook("456"));
+		entityManager.persistFlushFind(Book.builder().title("Contos").author("Ciclano").isbn("789").build());
+		Example<Book> example = Example.of(Book.builder().author("fulano").build(), ExampleMatcher.matching()
+				.withIgnoreCase().withIgnoreNullValues());
+		
+		// Execução
+		Slice<Book> slice = repository.findSlice(example, PageRequest.of(0, 1, Sort.by("isbn")));
+		ResultVersionDTO version = repository.findVersion(example);
+		
+		// Verificação
+		Assertions.assertThat(slice.getContent()).extracting(Book::getIsbn).containsExactly("123");
+		Assertions.assertThat(slice.hasNext()).isTrue();
+		Assertions.assertThat(version.getCount()).isEqualTo(2);
+		Assertions.assertThat(version.getIdSum()).isEqualTo(first.getId() + second.getId());
+		Assertions.assertThat(version.getHash()).isPositive();
+	}
+	
+	@Test
+	@DisplayName("Deve mudar o hash da versão quando o resultado troca de registros com a mesma soma de ids")
+	public void findVersionSameIdSumTest() {
+		// Cenário
+		Book[] books = new Book[4];
+		for(int i = 0; i < books.length; i++) {
+			books[i] = entityManager.persistFlushFind(createNewBook("00" + i));
+		}
+		Example<Book> example = Example.of(Book.builder().author("fulano").build(), ExampleMatcher.matching()
+				.withIgnoreCase().withIgnoreNullValues());
+		books[1].setAuthor("Ciclano");
+		books[2].setAuthor("Ciclano");
+		entityManager.flush();
+		// Primeiro e último na versão 2, como os do meio ficarão ao voltar: a soma das versões também é a mesma
+		for(String title : Arrays.asList("Contos", "Crônicas")) {
+			books[0].setTitle(title);
+			books[3].setTitle(title);
+			entityManager.flush();
+		}
+		ResultVersionDTO outer = repository.findVersion(example);
+		
+		// Execução: saem o primeiro e o último, entram os do meio
+		books[0].setAuthor("Ciclano");
+		books[3].setAuthor("Ciclano");
+		books[1].setAuthor("Fulano");
+		books[2].setAuthor("Fulano");
+		entityManager.flush();
+		ResultVersionDTO inner = repository.findVersion(example);
+		
+		// Verificação
+		Assertions.assertThat(Arrays.asList(books[1], books[2])).extracting(Book::getVersion).containsOnly(2l);
+		Assertions.assertThat(inner.getCount()).isEqualTo(outer.getCount());
+		Assertions.assertThat(inner.getIdSum()).isEqualTo(outer.getIdSum());
+		Assertions.assertThat(inner.toETag()).isNotEqualTo(outer.toETag());
+	}
+	
+	@Test
+	@DisplayName("Deve estimar a quantidade de livros pelas estatísticas do banco")
+	public void estimateCountTest() {
+		entityManager.persistFlushFind(createNewBook("123"));
+		entityManager.persistFlushFind(createNewBook("456"));
+		
+		Assertions.assertThat(repository.estimateCount()).isEqualTo(2);
+	}
+	
 	private Book createNewBook(String isbn) {
 		return Book.builder().title("Aventuras").author("Fulano").isbn(isbn).build();
 	}
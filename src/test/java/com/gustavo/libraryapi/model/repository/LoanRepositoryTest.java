@@ -1,46 +1,75 @@
 package com.gustavo.libraryapi.model.repository;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.Session;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
 
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @DataJpaTest
 public class LoanRepositoryTest {
 	
+	// Comandos executados no banco, capturados pelo proxy do DataSource (datasource-proxy) para o EXPLAIN do SQL
+	// realmente gerado pelo Hibernate
+	static final List<QueryInfo> QUERIES = new CopyOnWriteArrayList<>();
+	
+	@TestConfiguration
+	static class CaptureQueriesConfig {
+		
+		@Bean
+		public static BeanPostProcessor captureQueriesPostProcessor() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if(bean instanceof DataSource) {
+						return ProxyDataSourceBuilder.create((DataSource) bean)
+								.afterQuery((execution, queries) -> QUERIES.addAll(queries)).build();
+					}
+					return bean;
+				}
+			};
+		}
+		
+	}
+	
 	@Autowired
 	private LoanRepository repository;
 		
 	@Autowired
 	private TestEntityManager entityManager;
 	
-	@Test
-	@DisplayName("Deve verificar se existe empréstimo não devolvido para o livro")
-	public void existsByBookAndNotReturnedTest() {
-		// Cenário
-		Loan loan = createAndPersistLoan(LocalDate.now());
-		
-		// Execução
-		boolean exists = repository.existsByBookAndNotReturned(loan.getBook());
-		
-		Assertions.assertThat(exists).isTrue();		
-	}
-	
 	@Test
 	@DisplayName("Deve buscar empréstimo pelo isbn do livro ou customer")
 	public void findByBookIsbnOrCustomerTest() {
@@ -56,23 +85,141 @@ public class LoanRepositoryTest {
 	}
 	
 	@Test
-	@DisplayName("Deve obter empréstimos cuja data empréstimo for menor ou igual a três dias atras e não retornado")
-	public void findByLoanDateLessThanAndNotReturnedTest() {
-		Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5));
+	@DisplayName("Deve obter os emails de empréstimos atrasados sem repetição e a partir do último email lido")
+	public void findLateLoanEmailsAfterTest() {
+		createAndPersistLoan("1", "b@email.com", LocalDate.now().minusDays(5));
+		createAndPersistLoan("2", "a@email.com", LocalDate.now().minusDays(6));
+		createAndPersistLoan("3", "b@email.com", LocalDate.now().minusDays(7));
+		createAndPersistLoan("4", "c@email.com", LocalDate.now().minusDays(8));
+		createAndPersistLoan("5", "d@email.com", LocalDate.now());
+		
+		LocalDate threeDaysAgo = LocalDate.now().minusDays(4);
+		List<String> firstChunk = repository.findLateLoanEmailsAfter(threeDaysAgo, "", PageRequest.of(0, 2));
+		List<String> secondChunk = repository.findLateLoanEmailsAfter(threeDaysAgo, "b@email.com", PageRequest.of(0, 2));
+		
+		Assertions.assertThat(firstChunk).containsExactly("a@email.com", "b@email.com");
+		Assertions.assertThat(secondChunk).containsExactly("c@email.com");
+	}
+	
+	@Test
+	@DisplayName("Deve buscar empréstimos a partir do último registro da página anterior")
+	public void findPageByBookIsbnOrCustomerAfterTest() {
+		Loan oldest = createAndPersistLoan("1", "a@email.com", LocalDate.now().minusDays(2));
+		Loan middle = createAndPersistLoan("2", "a@email.com", LocalDate.now().minusDays(1));
+		Loan newest = createAndPersistLoan("3", "a@email.com", LocalDate.now().minusDays(1));
 		
-		List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+		List<Loan> firstPage = repository.findFirstPageByBookIsbnOrCustomer(null, "Fulano", PageRequest.of(0, 2));
+		Loan last = firstPage.get(1);
+		List<Loan> secondPage = repository.findPageByBookIsbnOrCustomerAfter(null, "Fulano", 
+				last.getLoanDate(), last.getId(), PageRequest.of(0, 2));
 		
-		Assertions.assertThat(result).hasSize(1).contains(loan);
+		Assertions.assertThat(firstPage).containsExactly(newest, middle);
+		Assertions.assertThat(secondPage).containsExactly(oldest);
 	}
 	
 	@Test
-	@DisplayName("Deve retornar vazio quando não houver empréstimos atrasados")
-	public void notFindByLoanDateLessThanAndNotReturnedTest() {
+	@DisplayName("Deve usar o índice de livro e devolvido ao buscar os empréstimos em aberto pelo isbn")
+	public void findOpenByBookIsbnInPlanTest() {
 		createAndPersistLoan(LocalDate.now());
+		entityManager.flush();
+		QUERIES.clear();
 		
-		List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+		repository.findOpenByBookIsbnIn(Collections.singleton("123"));
 		
-		Assertions.assertThat(result).isEmpty();
+		Assertions.assertThat(explainLastQuery()).containsIgnoringCase("idx_loan_book_returned");
+	}
+	
+	@Test
+	@DisplayName("Deve usar o índice de devolvido e data do empréstimo ao buscar empréstimos atrasados")
+	public void findLateLoanEmailsAfterPlanTest() {
+		createAndPersistLoan(LocalDate.now().minusDays(5));
+		entityManager.flush();
+		QUERIES.clear();
+		
+		repository.findLateLoanEmailsAfter(LocalDate.now().minusDays(4), "", PageRequest.of(0, 10));
+		
+		Assertions.assertThat(explainLastQuery()).containsIgnoringCase("idx_loan_returned_loan_date");
+	}
+	
+	@Test
+	@DisplayName("Deve salvar o empréstimo como não devolvido quando a devolução não for informada")
+	public void defaultReturnedTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		loan.setReturned(null);
+		entityManager.flush();
+		
+		Assertions.assertThat(loan.getReturned()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos filtrados por isbn, customer e período em ordem de data")
+	public void streamForExportTest() {
+		Loan first = createAndPersistLoan("123", "fulano@email.com", LocalDate.of(2021, 12, 1));
+		Loan second = createAndPersistLoan("456", "fulano@email.com", LocalDate.of(2021, 12, 3));
+		createAndPersistLoan("789", "fulano@email.com", LocalDate.of(2021, 12, 10));
+		
+		List<LoanExportDTO> all;
+		try(Stream<LoanExportDTO> stream = repository.streamForExport(null, null, null, LocalDate.of(2021, 12, 5))) {
+			all = stream.collect(Collectors.toList());
+		}
+		List<LoanExportDTO> byIsbn;
+		try(Stream<LoanExportDTO> stream = repository.streamForExport("456", "Fulano", LocalDate.of(2021, 12, 2), null)) {
+			byIsbn = stream.collect(Collectors.toList());
+		}
+		
+		Assertions.assertThat(all).extracting(LoanExportDTO::getId).containsExactly(first.getId(), second.getId());
+		Assertions.assertThat(byIsbn).containsExactly(new LoanExportDTO(second.getId(), "456", "Fulano", 
+				"fulano@email.com", LocalDate.of(2021, 12, 3), false));
+	}
+	
+	@Test
+	@DisplayName("Deve devolver em um único update apenas os empréstimos em aberto")
+	public void returnOpenLoansTest() {
+		// Cenário
+		Loan first = createAndPersistLoan("123", "a@email.com", LocalDate.now().minusDays(3));
+		Loan second = createAndPersistLoan("456", "b@email.com", LocalDate.now());
+		Loan returned = createAndPersistLoan("789", "c@email.com", LocalDate.now());
+		returned.setReturned(true);
+		entityManager.flush();
+		
+		// Execução
+		List<LoanRepository.OpenLoan> byId = repository.findOpenByIdIn(Arrays.asList(first.getId(), returned.getId(), -1l));
+		List<LoanRepository.OpenLoan> byIsbn = repository.findOpenByBookIsbnIn(Arrays.asList("456", "789"));
+		int updated = repository.markReturned(Arrays.asList(first.getId(), second.getId(), returned.getId()), LocalDate.now());
+		
+		// Verificação
+		Assertions.assertThat(byId).hasSize(1);
+		Assertions.assertThat(byId.get(0).getId()).isEqualTo(first.getId());
+		Assertions.assertThat(byId.get(0).getBookId()).isEqualTo(first.getBook().getId());
+		Assertions.assertThat(byId.get(0).getIsbn()).isEqualTo("123");
+		Assertions.assertThat(byId.get(0).getLoanDate()).isEqualTo(first.getLoanDate());
+		Assertions.assertThat(byIsbn).extracting(LoanRepository.OpenLoan::getId).containsExactly(second.getId());
+		Assertions.assertThat(updated).isEqualTo(2);
+		Assertions.assertThat(repository.findOpenByIdIn(Arrays.asList(first.getId(), second.getId()))).isEmpty();
+		entityManager.clear();
+		Assertions.assertThat(entityManager.find(Loan.class, first.getId()).getReturnDate()).isEqualTo(LocalDate.now());
+		Assertions.assertThat(repository.findExistingIds(Arrays.asList(first.getId(), -1l))).containsExactly(first.getId());
+		Assertions.assertThat(repository.findReturnedById(first.getId())).contains(true);
+		Assertions.assertThat(repository.findReturnedById(-1l)).isEmpty();
+	}
+	
+	// Plano de execução do H2 para o último comando gerado pelo Hibernate, com os mesmos parâmetros
+	private String explainLastQuery() {
+		Assertions.assertThat(QUERIES).isNotEmpty();
+		QueryInfo query = QUERIES.get(QUERIES.size() - 1);
+		return entityManager.getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+			try(PreparedStatement statement = connection.prepareStatement("explain " + query.getQuery())) {
+				for(ParameterSetOperation parameter : query.getParametersList().get(0)) {
+					parameter.getMethod().invoke(statement, parameter.getArgs());
+				}
+				try(ResultSet plan = statement.executeQuery()) {
+					plan.next();
+					return plan.getString(1);
+				}
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(e);
+			}
+		});
 	}
 	
 	private Book createNewBook(String isbn) {
@@ -88,5 +235,15 @@ public class LoanRepositoryTest {
 		
 		return loan;
 	}
+	
+	private Loan createAndPersistLoan(String isbn, String email, LocalDate loanDate) {
+		Book book = createNewBook(isbn);
+		entityManager.persist(book);
+		
+		Loan loan = Loan.builder().book(book).customer("Fulano").customerEmail(email).loanDate(loanDate).build();
+		entityManager.persist(loan);
+		
+		return loan;
+	}
 
 }
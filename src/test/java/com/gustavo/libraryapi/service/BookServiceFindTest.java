@@ -0,0 +1,68 @@
+package com.gustavo.libraryapi.service;
+
+import java.time.LocalDate;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.gustavo.libraryapi.model.entity.Book;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookSearchIndex;
+import com.gustavo.libraryapi.service.impl.BookServiceImpl;
+import com.gustavo.libraryapi.service.impl.PageCounter;
+
+// Busca por exemplo (QBE) do serviço no banco: emprestado ou não, o livro é encontrado pelo filtro montado pelo
+// controlador, que só tem os campos da busca
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(BookServiceImpl.class)
+public class BookServiceFindTest {
+	
+	@Autowired
+	BookService service;
+	
+	@Autowired
+	BookLoanStatisticsRepository statisticsRepository;
+	
+	@Autowired
+	TestEntityManager entityManager;
+	
+	@MockBean
+	BookSearchIndex searchIndex;
+	
+	@MockBean
+	PageCounter pageCounter;
+	
+	@Test
+	@DisplayName("Deve listar os livros emprestados e os já devolvidos pelo filtro")
+	public void findLoanedBookTest() {
+		// Cenário
+		Book loaned = entityManager.persist(Book.builder().title("As aventuras").author("Fulano").isbn("001").build());
+		Book returned = entityManager.persist(Book.builder().title("Outras aventuras").author("Fulano").isbn("002").build());
+		entityManager.flush();
+		statisticsRepository.registerLoan(loaned.getId(), LocalDate.now());
+		statisticsRepository.registerLoan(returned.getId(), LocalDate.now().minusDays(2));
+		statisticsRepository.markReturned(returned.getId(), 2);
+		entityManager.clear();
+		
+		// Execução
+		Page<Book> result = service.find(Book.builder().author("fulano").build(), PageRequest.of(0, 10));
+		
+		// Verificação
+		Assertions.assertThat(result.getContent()).extracting(Book::getIsbn).containsExactlyInAnyOrder("001", "002");
+		Assertions.assertThat(result.getTotalElements()).isEqualTo(2);
+	}
+
+}
@@ -1,27 +1,40 @@
 package com.gustavo.libraryapi.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.gustavo.libraryapi.api.dto.BookLoanStatisticsDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.exception.BusinessException;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.repository.BookRepository;
+import com.gustavo.libraryapi.model.repository.BookSearchIndex;
 import com.gustavo.libraryapi.service.impl.BookServiceImpl;
+import com.gustavo.libraryapi.service.impl.PageCounter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -32,9 +45,12 @@ public class BookServiceTest {
 	@MockBean
 	BookRepository repository;
 	
+	@MockBean
+	BookSearchIndex searchIndex;
+	
 	@BeforeEach
 	public void setUp() {
-		this.service = new BookServiceImpl(repository);
+		this.service = new BookServiceImpl(repository, searchIndex, new PageCounter(new SimpleMeterRegistry(), Duration.ofSeconds(30), 100));
 	}
 	
 	@Test
@@ -42,8 +58,7 @@ public class BookServiceTest {
 	public void saveBookTest() {
 		// Cenário
 		Book book = createValidBook();
-		Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
-		Mockito.when(repository.save(book)).thenReturn(Book.builder().id(1l).isbn("123").author("Fulano").title("As aventuras").build());
+		Mockito.when(repository.saveAndFlush(book)).thenReturn(Book.builder().id(1l).isbn("123").author("Fulano").title("As aventuras").build());
 		
 		// Execução
 		Book savedBook = service.save(book);
@@ -60,7 +75,9 @@ public class BookServiceTest {
 	public void shouldNotSaveABookWithDuplicatedISBN() {
 		// Cenário
 		Book book = createValidBook();
-		Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(true);
+		// O índice único do banco rejeita o insert
+		Mockito.when(repository.saveAndFlush(book)).thenThrow(new DataIntegrityViolationException("could not execute statement", 
+				new ConstraintViolationException("Unique index or primary key violation", null, "PUBLIC.UK_BOOK_ISBN_INDEX_1")));
 		
 		// Execução
 		// catchThrowable é usado para capturar a exceção lançada 
@@ -72,6 +89,30 @@ public class BookServiceTest {
 			.hasMessage("Isbn já cadastrado.");
 		
 		Mockito.verify(repository, Mockito.never()).save(book);
+		Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+	}
+	
+	@Test
+	@DisplayName("Deve salvar o livro com o isbn normalizado")
+	public void saveBookWithNormalizedIsbnTest() {
+		Book book = Book.builder().isbn("978-85 7522-x").author("Fulano").title("As aventuras").build();
+		Mockito.when(repository.saveAndFlush(book)).thenReturn(book);
+		
+		Book savedBook = service.save(book);
+		
+		Assertions.assertThat(savedBook.getIsbn()).isEqualTo("978857522X");
+	}
+	
+	@Test
+	@DisplayName("Não deve traduzir outras violações de integridade em erro de negócio")
+	public void saveBookWithOtherIntegrityViolationTest() {
+		Book book = createValidBook();
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("could not execute statement");
+		Mockito.when(repository.saveAndFlush(book)).thenThrow(violation);
+		
+		Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+		
+		Assertions.assertThat(exception).isSameAs(violation);
 	}
 	
 	@Test
@@ -94,6 +135,22 @@ public class BookServiceTest {
 		Assertions.assertThat(foundBook.get().getTitle()).isEqualTo(book.getTitle());
 	}
 	
+	@Test
+	@DisplayName("Deve obter as estatísticas de empréstimo de um livro sem carregar o livro")
+	public void getLoanStatisticsTest() {
+		// Cenário
+		BookLoanStatisticsDTO statistics = new BookLoanStatisticsDTO(2l, false, null, 2l, 6l);
+		Mockito.when(repository.findLoanStatisticsById(1l)).thenReturn(Optional.of(statistics));
+		
+		// Execução
+		Optional<BookLoanStatisticsDTO> result = service.getLoanStatistics(1l);
+		
+		// Verificação
+		Assertions.assertThat(result).contains(statistics);
+		Assertions.assertThat(result.get().getAverageLoanDays()).isEqualTo(3);
+		Mockito.verify(repository, Mockito.never()).findById(1l);
+	}
+	
 	@Test
 	@DisplayName("Deve retornar vazio ao obter um livro por Id quando ele não exitir na base")	
 	public void bookNotFoundByIdTest() {
@@ -193,6 +250,62 @@ public class BookServiceTest {
 		Assertions.assertThat(result.getPageable().getPageSize()).isEqualTo(10);
 	}
 	
+	@Test
+	@DisplayName("Deve buscar a página sem count, com o total da versão")
+	public void findBookWithVersionTest() {
+		// Cenário
+		Book book = createValidBook();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Mockito.when(repository.findSlice(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+			.thenReturn(new SliceImpl<Book>(Arrays.asList(book), pageRequest, false));
+		
+		// Execução
+		Slice<Book> withVersion = service.find(book, pageRequest, new ResultVersionDTO(1l, 1l, 0l));
+		Slice<Book> withoutVersion = service.find(book, pageRequest, null);
+		
+		// Verificação
+		Assertions.assertThat(withVersion).isInstanceOf(Page.class);
+		Assertions.assertThat(((Page<Book>) withVersion).getTotalElements()).isEqualTo(1);
+		Assertions.assertThat(withoutVersion).isNotInstanceOf(Page.class);
+		Assertions.assertThat(withoutVersion.getContent()).containsExactly(book);
+		Mockito.verify(repository, Mockito.never()).count(Mockito.any(Example.class));
+	}
+	
+	@Test
+	@DisplayName("Deve reutilizar a versão da busca com o mesmo filtro na estratégia cached")
+	public void findVersionCachedTest() {
+		// Cenário
+		Mockito.when(repository.findVersion(Mockito.any(Example.class))).thenReturn(new ResultVersionDTO(2l, 3l, 0l));
+		
+		// Execução: o filtro ignora maiúsculas, então as duas buscas são iguais
+		service.findVersion(Book.builder().author("Fulano").build(), CountMode.CACHED);
+		Optional<ResultVersionDTO> version = service.findVersion(Book.builder().author("fulano").build(), CountMode.CACHED);
+		
+		// Verificação
+		Assertions.assertThat(version.get().getCount()).isEqualTo(2);
+		Assertions.assertThat(version.get().toETag()).isNull();
+		Mockito.verify(repository, Mockito.times(1)).findVersion(Mockito.any(Example.class));
+	}
+	
+	@Test
+	@DisplayName("Deve estimar o total apenas da listagem sem filtro")
+	public void findVersionEstimatedTest() {
+		// Cenário
+		Mockito.when(repository.estimateCount()).thenReturn(1000l);
+		Mockito.when(repository.findVersion(Mockito.any(Example.class))).thenReturn(new ResultVersionDTO(2l, 3l, 0l));
+		
+		// Execução
+		Optional<ResultVersionDTO> all = service.findVersion(Book.builder().build(), CountMode.ESTIMATED);
+		Optional<ResultVersionDTO> filtered = service.findVersion(Book.builder().title("aventuras").build(), CountMode.ESTIMATED);
+		Optional<ResultVersionDTO> none = service.findVersion(Book.builder().build(), CountMode.NONE);
+		
+		// Verificação
+		Assertions.assertThat(all.get().getCount()).isEqualTo(1000);
+		Assertions.assertThat(all.get().toETag()).isNull();
+		Assertions.assertThat(filtered.get().getCount()).isEqualTo(2);
+		Assertions.assertThat(none).isEmpty();
+	}
+	
 	@Test
 	@DisplayName("Deve obter um livro pelo isbn")
 	public void getBookByIsbnTest() {
@@ -208,6 +321,104 @@ public class BookServiceTest {
 		Mockito.verify(repository, Mockito.times(1)).findByIsbn(isbn);
 	}
 	
+	@Test
+	@DisplayName("Deve buscar a primeira página de livros por cursor")
+	public void findFirstPageTest() {
+		Book filter = Book.builder().title("aventuras").build();
+		List<Book> books = Arrays.asList(createValidBook());
+		Mockito.when(repository.findFirstPage("aventuras", null, null, PageRequest.of(0, 11))).thenReturn(books);
+		
+		List<Book> result = service.findAfter(filter, null, 11);
+		
+		Assertions.assertThat(result).isEqualTo(books);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar livros a partir do cursor")
+	public void findPageAfterTest() {
+		Book filter = Book.builder().author("fulano").build();
+		Book last = Book.builder().id(7l).title("As aventuras").build();
+		List<Book> books = Arrays.asList(createValidBook());
+		Mockito.when(repository.findPageAfter(null, "fulano", null, "As aventuras", 7l, PageRequest.of(0, 11))).thenReturn(books);
+		
+		List<Book> result = service.findAfter(filter, last, 11);
+		
+		Assertions.assertThat(result).isEqualTo(books);
+	}
+	
+	@Test
+	@DisplayName("Deve importar apenas os livros com isbn não cadastrado")
+	public void importBooksTest() {
+		// Cenário
+		Book existing = Book.builder().isbn("1").author("Fulano").title("As aventuras").build();
+		Book book = Book.builder().isbn("2").author("Fulano").title("As aventuras").build();
+		Book repeated = Book.builder().isbn("2").author("Ciclano").title("Outras aventuras").build();
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.singleton("1"));
+		Mockito.when(repository.insertAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+		
+		// Execução
+		List<Book> saved = service.importBooks(Arrays.asList(existing, book, repeated));
+		
+		// Verificação
+		Assertions.assertThat(saved).containsExactly(book);
+		Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.times(1)).insertAll(Arrays.asList(book));
+	}
+	
+	@Test
+	@DisplayName("Não deve inserir quando todos os livros importados já estão cadastrados")
+	public void importBooksAllExistingTest() {
+		Book existing = createValidBook();
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.singleton("123"));
+		
+		List<Book> saved = service.importBooks(Arrays.asList(existing));
+		
+		Assertions.assertThat(saved).isEmpty();
+		Mockito.verify(repository, Mockito.never()).insertAll(Mockito.anyList());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar os livros pelo índice de texto mantendo a ordem de relevância")
+	public void searchBooksTest() {
+		// Cenário
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Book first = Book.builder().id(2l).title("Aventuras").build();
+		Book second = Book.builder().id(1l).title("Outras aventuras").build();
+		Mockito.when(searchIndex.search("aventuras", pageRequest)).thenReturn(new PageImpl<>(Arrays.asList(2l, 1l), pageRequest, 2));
+		Mockito.when(repository.findAllById(Arrays.asList(2l, 1l))).thenReturn(Arrays.asList(second, first));
+		
+		// Execução
+		Page<Book> result = service.search("aventuras", pageRequest);
+		
+		// Verificação
+		Assertions.assertThat(result.getContent()).containsExactly(first, second);
+		Assertions.assertThat(result.getTotalElements()).isEqualTo(2);
+	}
+	
+	@Test
+	@DisplayName("Deve reconstruir o índice de busca lendo os livros em blocos")
+	public void reindexTest() {
+		List<Book> chunk = new ArrayList<>();
+		for(long id = 1; id <= 1000; id++) {
+			chunk.add(Book.builder().id(id).build());
+		}
+		Book last = Book.builder().id(1001l).build();
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.eq(0l), Mockito.any())).thenReturn(chunk);
+		Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.eq(1000l), Mockito.any())).thenReturn(Arrays.asList(last));
+		Mockito.when(searchIndex.rebuild(Mockito.any())).thenAnswer(invocation -> {
+			long count = 0;
+			for(Object book : invocation.getArgument(0, Iterable.class)) {
+				count++;
+			}
+			return count;
+		});
+		
+		long count = service.reindex();
+		
+		Assertions.assertThat(count).isEqualTo(1001);
+		Mockito.verify(repository, Mockito.times(2)).findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any());
+	}
+	
 	private Book createValidBook() {
 		return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
 	}
@@ -1,9 +1,15 @@
 package com.gustavo.libraryapi.service;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,18 +18,30 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.gustavo.libraryapi.api.dto.LoanExportDTO;
 import com.gustavo.libraryapi.api.dto.LoanFilterDTO;
+import com.gustavo.libraryapi.api.dto.LoanReturnResultDTO;
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
 import com.gustavo.libraryapi.exception.BusinessException;
 import com.gustavo.libraryapi.model.entity.Book;
 import com.gustavo.libraryapi.model.entity.Loan;
+import com.gustavo.libraryapi.model.repository.BookLoanStatisticsRepository;
+import com.gustavo.libraryapi.model.repository.BookRepository;
 import com.gustavo.libraryapi.model.repository.LoanRepository;
 import com.gustavo.libraryapi.service.impl.LoanServiceImpl;
+import com.gustavo.libraryapi.service.impl.PageCounter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -34,9 +52,16 @@ public class LoanServiceTest {
 	@MockBean
 	LoanRepository repository;
 	
+	@MockBean
+	BookRepository bookRepository;
+	
+	@MockBean
+	BookLoanStatisticsRepository statisticsRepository;
+	
 	@BeforeEach
 	public void setUp() {
-		this.service = new LoanServiceImpl(repository);
+		this.service = new LoanServiceImpl(repository, bookRepository, statisticsRepository,
+				new PageCounter(new SimpleMeterRegistry(), Duration.ofSeconds(30), 100));
 	}
 	
 	@Test
@@ -58,7 +83,7 @@ public class LoanServiceTest {
 				.customer(customer)
 				.book(book).build();
 		
-		Mockito.when(repository.existsByBookAndNotReturned(book)).thenReturn(false);
+		Mockito.when(statisticsRepository.registerLoan(1l, savingLoan.getLoanDate())).thenReturn(1);
 		Mockito.when(repository.save(savingLoan)).thenReturn(savedLoan);
 		
 		Loan loan = service.save(savingLoan);
@@ -82,7 +107,8 @@ public class LoanServiceTest {
 				.loanDate(LocalDate.now())
 				.build();
 		
-		Mockito.when(repository.existsByBookAndNotReturned(book)).thenReturn(true);
+		// O update condicional não alterou nenhuma linha: o livro já está emprestado
+		Mockito.when(statisticsRepository.registerLoan(1l, savingLoan.getLoanDate())).thenReturn(0);
 		
 		Throwable exception = Assertions.catchThrowable(() -> service.save(savingLoan));
 		
@@ -118,20 +144,184 @@ public class LoanServiceTest {
 	}
 	
 	@Test
-	@DisplayName("Deve atualizar um empréstimo")
+	@DisplayName("Deve devolver um empréstimo em aberto")
 	public void updateLOanTest() {
 		Loan loan = createLoan();
 		loan.setId(1l);
+		loan.setVersion(0l);
 		loan.setReturned(true);
 		
-		Mockito.when(repository.save(loan)).thenReturn(loan);
+		Mockito.when(repository.markReturned(Collections.singleton(1l), LocalDate.now())).thenReturn(1);
 		
 		Loan updatedLoan = service.update(loan);
 		
 		Assertions.assertThat(updatedLoan.getReturned()).isTrue();
+		Assertions.assertThat(updatedLoan.getVersion()).isEqualTo(1l);
+		Assertions.assertThat(updatedLoan.getReturnDate()).isEqualTo(LocalDate.now());
+		Mockito.verify(repository, Mockito.never()).save(loan);
+		Mockito.verify(statisticsRepository).markReturned(1l, 0);
+	}
+	
+	@Test
+	@DisplayName("Não deve alterar o livro ao devolver um empréstimo já devolvido")
+	public void updateReturnedLoanTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setVersion(0l);
+		loan.setReturned(true);
+		
+		Mockito.when(repository.markReturned(Collections.singleton(1l), LocalDate.now())).thenReturn(0);
+		
+		service.update(loan);
+		
+		Mockito.verify(statisticsRepository, Mockito.never()).markReturned(Mockito.anyLong(), Mockito.anyLong());
+		Mockito.verify(repository, Mockito.never()).save(loan);
+	}
+	
+	@Test
+	@DisplayName("Deve somar os dias do empréstimo nas estatísticas do livro ao devolver")
+	public void returnLoanStatisticsTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setVersion(0l);
+		loan.setLoanDate(LocalDate.now().minusDays(5));
+		loan.setReturned(true);
+		Mockito.when(repository.markReturned(Collections.singleton(1l), LocalDate.now())).thenReturn(1);
+		
+		service.update(loan);
+		
+		Mockito.verify(statisticsRepository).markReturned(1l, 5);
+	}
+	
+	@Test
+	@DisplayName("Deve tirar a devolução das estatísticas do livro ao reabrir um empréstimo devolvido")
+	public void reopenLoanTest() {
+		// Cenário
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setLoanDate(LocalDate.now().minusDays(5));
+		loan.setReturnDate(LocalDate.now().minusDays(2));
+		loan.setReturned(false);
+		Mockito.when(repository.findReturnedById(1l)).thenReturn(Optional.of(true));
+		Mockito.when(statisticsRepository.reopenLoan(1l, 3)).thenReturn(1);
+		Mockito.when(repository.save(loan)).thenReturn(loan);
+		
+		// Execução
+		Loan reopened = service.update(loan);
+		
+		// Verificação
+		Assertions.assertThat(reopened.getReturnDate()).isNull();
+		Mockito.verify(statisticsRepository).reopenLoan(1l, 3);
 		Mockito.verify(repository).save(loan);
 	}
 	
+	@Test
+	@DisplayName("Não deve alterar o livro ao salvar um empréstimo em aberto")
+	public void updateOpenLoanTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setReturned(false);
+		
+		service.update(loan);
+		
+		Mockito.verify(statisticsRepository, Mockito.never()).reopenLoan(Mockito.anyLong(), Mockito.anyLong());
+		Mockito.verify(repository).save(loan);
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio ao reabrir um empréstimo de um livro emprestado novamente")
+	public void reopenLoanOfLoanedBookTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setReturnDate(LocalDate.now());
+		loan.setReturned(false);
+		Mockito.when(repository.findReturnedById(1l)).thenReturn(Optional.of(true));
+		Mockito.when(statisticsRepository.reopenLoan(1l, 0)).thenReturn(0);
+		
+		Throwable exception = Assertions.catchThrowable(() -> service.update(loan));
+		
+		Assertions.assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+		Mockito.verify(repository, Mockito.never()).save(loan);
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio ao reabrir um empréstimo devolvido sem data de devolução")
+	public void reopenLoanWithoutReturnDateTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setReturned(false);
+		Mockito.when(repository.findReturnedById(1l)).thenReturn(Optional.of(true));
+		
+		Throwable exception = Assertions.catchThrowable(() -> service.update(loan));
+		
+		Assertions.assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Loan has no return date");
+		Mockito.verify(statisticsRepository, Mockito.never()).reopenLoan(Mockito.anyLong(), Mockito.anyLong());
+		Mockito.verify(repository, Mockito.never()).save(loan);
+	}
+	
+	@Test
+	@DisplayName("Deve devolver em lote os empréstimos em aberto informando o resultado de cada item")
+	public void returnAllTest() {
+		// Cenário
+		LocalDate today = LocalDate.now();
+		Mockito.when(repository.findOpenByIdIn(new HashSet<>(Arrays.asList(1l, 2l, 3l))))
+			.thenReturn(Arrays.asList(openLoan(1l, 10l, "001", today.minusDays(2))));
+		Mockito.when(repository.findOpenByBookIsbnIn(new HashSet<>(Arrays.asList("002", "003", "004"))))
+			.thenReturn(Arrays.asList(openLoan(4l, 20l, "002", today.minusDays(2)), openLoan(5l, 30l, "003", today)));
+		Mockito.when(repository.findExistingIds(new HashSet<>(Arrays.asList(2l, 3l)))).thenReturn(Collections.singleton(2l));
+		Mockito.when(bookRepository.findExistingIsbns(Collections.singleton("004"))).thenReturn(Collections.emptySet());
+		Mockito.when(repository.markReturned(new HashSet<>(Arrays.asList(1l, 4l, 5l)), today)).thenReturn(3);
+		
+		// Execução
+		List<LoanReturnResultDTO> results = service.returnAll(Arrays.asList(1l, 2l, 3l, 1l), Arrays.asList("0-02", "003", "004"));
+		
+		// Verificação
+		Assertions.assertThat(results).containsExactly(
+				new LoanReturnResultDTO(1l, "001", LoanReturnResultDTO.Status.RETURNED),
+				new LoanReturnResultDTO(2l, null, LoanReturnResultDTO.Status.ALREADY_RETURNED),
+				new LoanReturnResultDTO(3l, null, LoanReturnResultDTO.Status.NOT_FOUND),
+				new LoanReturnResultDTO(4l, "002", LoanReturnResultDTO.Status.RETURNED),
+				new LoanReturnResultDTO(5l, "003", LoanReturnResultDTO.Status.RETURNED),
+				new LoanReturnResultDTO(null, "004", LoanReturnResultDTO.Status.NOT_FOUND));
+		
+		// Um update dos empréstimos e um dos livros por duração
+		Mockito.verify(repository).markReturned(new HashSet<>(Arrays.asList(1l, 4l, 5l)), today);
+		Mockito.verify(statisticsRepository).markAllReturned(Mockito.argThat(ids -> new HashSet<>(ids).equals(new HashSet<>(Arrays.asList(10l, 20l)))), 
+				Mockito.eq(2l));
+		Mockito.verify(statisticsRepository).markAllReturned(Collections.singletonList(30l), 0);
+		Mockito.verify(repository, Mockito.never()).save(Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve desfazer a devolução em lote quando um empréstimo for devolvido por outra requisição")
+	public void returnAllConcurrentlyReturnedTest() {
+		// Cenário: o empréstimo 2 foi devolvido entre a consulta e o update
+		LocalDate today = LocalDate.now();
+		Mockito.when(repository.findOpenByIdIn(new HashSet<>(Arrays.asList(1l, 2l))))
+			.thenReturn(Arrays.asList(openLoan(1l, 10l, "001", today), openLoan(2l, 20l, "002", today)));
+		Mockito.when(repository.markReturned(new HashSet<>(Arrays.asList(1l, 2l)), today)).thenReturn(1);
+		
+		// Execução
+		Throwable exception = Assertions.catchThrowable(() -> service.returnAll(Arrays.asList(1l, 2l), Collections.emptyList()));
+		
+		// Verificação
+		Assertions.assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+		Mockito.verify(statisticsRepository, Mockito.never()).markAllReturned(Mockito.anyCollection(), Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("Não deve executar updates quando nenhum empréstimo do lote estiver em aberto")
+	public void returnAllWithoutOpenLoansTest() {
+		Mockito.when(repository.findExistingIds(Collections.singleton(1l))).thenReturn(Collections.singleton(1l));
+		
+		List<LoanReturnResultDTO> results = service.returnAll(Collections.singletonList(1l), Collections.emptyList());
+		
+		Assertions.assertThat(results).extracting(LoanReturnResultDTO::getStatus)
+			.containsExactly(LoanReturnResultDTO.Status.ALREADY_RETURNED);
+		Mockito.verify(repository, Mockito.never()).markReturned(Mockito.anyCollection(), Mockito.any());
+		Mockito.verify(repository, Mockito.never()).findOpenByBookIsbnIn(Mockito.anyCollection());
+	}
+	
 	@Test
 	@DisplayName("Deve filtrar empréstimos pelas propriedades")
 	public void findLoanTest() {
@@ -167,6 +357,84 @@ public class LoanServiceTest {
 		Assertions.assertThat(result.getPageable().getPageSize()).isEqualTo(10);
 	}
 	
+	@Test
+	@DisplayName("Deve filtrar empréstimos sem contar com a estratégia none")
+	public void findLoanWithoutCountTest() {
+		// Cenário
+		LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Loan loan = createLoan();
+		Mockito.when(repository.findSliceByBookIsbnOrCustomer("321", "Fulano", pageRequest))
+			.thenReturn(new SliceImpl<Loan>(Arrays.asList(loan), pageRequest, true));
+		
+		// Execução
+		Optional<ResultVersionDTO> version = service.findVersion(loanFilterDTO, CountMode.NONE);
+		Slice<Loan> result = service.find(loanFilterDTO, pageRequest, version.orElse(null));
+		
+		// Verificação
+		Assertions.assertThat(version).isEmpty();
+		Assertions.assertThat(result).isNotInstanceOf(Page.class);
+		Assertions.assertThat(result.hasNext()).isTrue();
+		Mockito.verify(repository, Mockito.never()).findVersionByBookIsbnOrCustomer(Mockito.anyString(), Mockito.anyString());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar empréstimos a partir do cursor")
+	public void findLoanAfterTest() {
+		LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+		Loan last = Loan.builder().id(3l).loanDate(LocalDate.of(2021, 12, 1)).build();
+		List<Loan> loans = Arrays.asList(createLoan());
+		
+		Mockito.when(repository.findPageByBookIsbnOrCustomerAfter("321", "Fulano", 
+				LocalDate.of(2021, 12, 1), 3l, PageRequest.of(0, 11))).thenReturn(loans);
+		
+		List<Loan> result = service.findAfter(loanFilterDTO, last, 11);
+		
+		Assertions.assertThat(result).isEqualTo(loans);
+		Mockito.verify(repository, Mockito.never()).findFirstPageByBookIsbnOrCustomer(
+				Mockito.anyString(), Mockito.anyString(), Mockito.any(PageRequest.class));
+	}
+	
+	@Test
+	@DisplayName("Deve obter os emails de empréstimos atrasados a partir do último email lido")
+	public void getLateLoanEmailsTest() {
+		List<String> emails = Arrays.asList("b@email.com", "c@email.com");
+		
+		Mockito.when(repository.findLateLoanEmailsAfter(
+				Mockito.any(LocalDate.class), 
+				Mockito.eq("a@email.com"), 
+				Mockito.eq(PageRequest.of(0, 2))))
+				.thenReturn(emails);
+		
+		List<String> result = service.getLateLoanEmails("a@email.com", 2);
+		
+		Assertions.assertThat(result).isEqualTo(emails);
+	}
+	
+	@Test
+	@DisplayName("Deve entregar cada empréstimo exportado ao consumidor e fechar a consulta")
+	public void exportTest() {
+		LoanExportDTO first = LoanExportDTO.builder().id(1l).isbn("123").build();
+		LoanExportDTO second = LoanExportDTO.builder().id(2l).isbn("123").build();
+		List<Boolean> closed = new ArrayList<>();
+		LocalDate from = LocalDate.of(2021, 12, 1);
+		
+		Mockito.when(repository.streamForExport("123", null, from, null))
+				.thenReturn(Stream.of(first, second).onClose(() -> closed.add(true)));
+		
+		List<LoanExportDTO> exported = new ArrayList<>();
+		long count = service.export(LoanFilterDTO.builder().isbn("1-23").build(), from, null, exported::add);
+		
+		Assertions.assertThat(count).isEqualTo(2);
+		Assertions.assertThat(exported).containsExactly(first, second);
+		Assertions.assertThat(closed).containsExactly(true);
+	}
+	
+	private LoanRepository.OpenLoan openLoan(Long id, Long bookId, String isbn, LocalDate loanDate) {
+		return new SpelAwareProxyProjectionFactory().createProjection(LoanRepository.OpenLoan.class, 
+				Map.of("id", id, "bookId", bookId, "isbn", isbn, "loanDate", loanDate));
+	}
+	
 	private Loan createLoan() {
 		Book book = Book.builder().id(1l).build();
 		String customer = "Fulano";
@@ -0,0 +1,99 @@
+package com.gustavo.libraryapi.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.gustavo.libraryapi.api.dto.ResultVersionDTO;
+import com.gustavo.libraryapi.service.impl.PageCounter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class PageCounterTest {
+	
+	PageCounter counter;
+	
+	SimpleMeterRegistry registry;
+	
+	@BeforeEach
+	public void setUp() {
+		registry = new SimpleMeterRegistry();
+		counter = new PageCounter(registry, Duration.ofSeconds(30), 100);
+	}
+	
+	@Test
+	@DisplayName("Deve medir as contagens executadas e o tempo economizado pelo cache e pela estratégia none")
+	public void savedTimeTest() {
+		// Cenário: contagem que leva 5 ms
+		ResultVersionDTO version = new ResultVersionDTO(10l, 55l, 0l);
+		
+		// Execução
+		counter.count("books", CountMode.CACHED, "fulano", () -> slow(version), null);
+		Optional<ResultVersionDTO> cached = counter.count("books", CountMode.CACHED, "fulano", () -> slow(version), null);
+		Optional<ResultVersionDTO> none = counter.count("books", CountMode.NONE, "fulano", () -> slow(version), null);
+		
+		// Verificação
+		Assertions.assertThat(cached.get().getCount()).isEqualTo(10);
+		Assertions.assertThat(cached.get().toETag()).isNull();
+		Assertions.assertThat(none).isEmpty();
+		Assertions.assertThat(registry.get("library.paging.count").tag("query", "books").tag("mode", "cached").timer().count())
+			.isEqualTo(1);
+		Assertions.assertThat(registry.get("library.paging.count.saved").tag("mode", "cached").counter().count())
+			.isGreaterThanOrEqualTo(0.005);
+		Assertions.assertThat(registry.get("library.paging.count.saved").tag("mode", "none").counter().count())
+			.isGreaterThanOrEqualTo(0.005);
+	}
+	
+	@Test
+	@DisplayName("Deve usar a contagem em cache quando a busca não tem estimativa")
+	public void estimatedFallbackTest() {
+		ResultVersionDTO version = new ResultVersionDTO(10l, 55l, 0l);
+		
+		Optional<ResultVersionDTO> estimated = counter.count("books", CountMode.ESTIMATED, "", () -> version, () -> 1000l);
+		Optional<ResultVersionDTO> filtered = counter.count("books", CountMode.ESTIMATED, "fulano", () -> version, null);
+		
+		Assertions.assertThat(estimated.get().isEstimated()).isTrue();
+		Assertions.assertThat(estimated.get().getCount()).isEqualTo(1000);
+		Assertions.assertThat(filtered.get().getCount()).isEqualTo(10);
+		Assertions.assertThat(filtered.get().toETag()).isNull();
+		Assertions.assertThat(registry.get("library.paging.count").tag("mode", "cached").timer().count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Não deve informar um total menor que o indicado pela própria página")
+	public void pageTotalTest() {
+		// Total em cache defasado: a segunda página está cheia e ainda tem próxima
+		Slice<String> slice = new SliceImpl<>(Arrays.asList("c", "d"), PageRequest.of(1, 2), true);
+		
+		Slice<String> page = PageCounter.page(slice, new ResultVersionDTO(3l, 6l, 0l));
+		
+		Assertions.assertThat(page).isInstanceOf(Page.class);
+		Assertions.assertThat(((Page<String>) page).getTotalElements()).isEqualTo(5);
+		Assertions.assertThat(PageCounter.page(slice, null)).isSameAs(slice);
+	}
+	
+	private static ResultVersionDTO slow(ResultVersionDTO version) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(5);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return version;
+	}
+	
+}
@@ -0,0 +1,90 @@
+package com.gustavo.libraryapi.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+	ScheduleService service;
+
+	@MockBean
+	LoanService loanService;
+
+	@MockBean
+	EmailService emailService;
+
+	@BeforeEach
+	public void setUp() {
+		this.service = new ScheduleService(loanService, emailService);
+		ReflectionTestUtils.setField(service, "message", "Empréstimo atrasado");
+		ReflectionTestUtils.setField(service, "chunkSize", 3);
+		ReflectionTestUtils.setField(service, "batchSize", 2);
+		ReflectionTestUtils.setField(service, "workers", 2);
+	}
+
+	@Test
+	@DisplayName("Deve enviar os emails de empréstimos atrasados em lotes lendo o banco em blocos")
+	public void sendMailToLateLoansTest() {
+		// Cenário
+		Mockito.when(loanService.getLateLoanEmails("", 3)).thenReturn(Arrays.asList("a@email.com", "b@email.com", "c@email.com"));
+		Mockito.when(loanService.getLateLoanEmails("c@email.com", 3)).thenReturn(Arrays.asList("d@email.com"));
+
+		// Execução
+		LateLoansReport report = service.sendMailToLateSoans();
+
+		// Verificação
+		Mockito.verify(emailService).sendMails("Empréstimo atrasado", Arrays.asList("a@email.com", "b@email.com"));
+		Mockito.verify(emailService).sendMails("Empréstimo atrasado", Arrays.asList("c@email.com"));
+		Mockito.verify(emailService).sendMails("Empréstimo atrasado", Arrays.asList("d@email.com"));
+		Mockito.verify(loanService, Mockito.times(2)).getLateLoanEmails(Mockito.anyString(), Mockito.eq(3));
+
+		Assertions.assertThat(report.getChunks()).isEqualTo(2);
+		Assertions.assertThat(report.getRecipients()).isEqualTo(4);
+		Assertions.assertThat(report.getNotifiedRecipients()).isEqualTo(4);
+		Assertions.assertThat(report.getSentBatches()).isEqualTo(3);
+		Assertions.assertThat(report.getFailedBatches()).isZero();
+	}
+
+	@Test
+	@DisplayName("Deve continuar o envio e contabilizar o lote que falhou")
+	public void sendMailToLateLoansWithFailedBatchTest() {
+		// Cenário
+		List<String> emails = Arrays.asList("a@email.com", "b@email.com");
+		Mockito.when(loanService.getLateLoanEmails("", 3)).thenReturn(emails);
+		Mockito.doThrow(new RuntimeException("smtp indisponível")).when(emailService).sendMails(Mockito.anyString(), Mockito.eq(emails));
+
+		// Execução
+		LateLoansReport report = service.sendMailToLateSoans();
+
+		// Verificação
+		Assertions.assertThat(report.getRecipients()).isEqualTo(2);
+		Assertions.assertThat(report.getNotifiedRecipients()).isZero();
+		Assertions.assertThat(report.getFailedBatches()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Não deve enviar emails quando não houver empréstimos atrasados")
+	public void sendMailWithoutLateLoansTest() {
+		Mockito.when(loanService.getLateLoanEmails("", 3)).thenReturn(Collections.emptyList());
+
+		LateLoansReport report = service.sendMailToLateSoans();
+
+		Mockito.verify(emailService, Mockito.never()).sendMails(Mockito.anyString(), Mockito.anyList());
+		Assertions.assertThat(report.getRecipients()).isZero();
+	}
+
+}